@@ -2,6 +2,8 @@ package com.github.warren_bank.myplaces;
 
 import com.github.warren_bank.myplaces.helpers.DistanceFormatter;
 import com.github.warren_bank.myplaces.models.WaypointListItem;
+import com.github.warren_bank.myplaces.models.WaypointStore;
+import com.github.warren_bank.myplaces.parsers.AbstractParser;
 import com.github.warren_bank.myplaces.services.PlacesLocationManager;
 
 import com.github.warren_bank.filterablerecyclerview.Filter;
@@ -9,6 +11,8 @@ import com.github.warren_bank.filterablerecyclerview.FilterableListItem;
 import com.github.warren_bank.filterablerecyclerview.FilterableListItemOnClickListener;
 import com.github.warren_bank.filterablerecyclerview.FilterableViewHolder;
 import com.github.warren_bank.filterablerecyclerview.FilterableAdapter;
+import com.github.warren_bank.filterablerecyclerview.QueryScheduler;
+import com.github.warren_bank.filterablerecyclerview.TrigramIndex;
 
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -18,6 +22,7 @@ import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
@@ -27,8 +32,7 @@ import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.List;
 
 public class PlacesActivity extends AppCompatActivity implements FilterableListItemOnClickListener {
@@ -44,19 +48,25 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
     private String                      format;
     private SORT_OPTION                 sort_order;
     private PlacesLocationManager       places_locationManager;
+    private AsyncTask                   loadTask;
+    private boolean                     is_loading;
 
-    private static final int GPS_INTERVAL = (60 * 5);  // 5 minutes, this is the period of time between GPS updates when sort_order is based on distance from the current location
+    private static final int GPS_INTERVAL          = (60 * 5);  // 5 minutes, this is the longest period of time between GPS updates when sort_order is based on distance from the current location (updates are more frequent while moving)
+    private static final int SEARCH_INDEX_MIN_SIZE = 10000;     // smaller lists are searched by a linear scan
 
     // ---------------------------------------------------------------------------------------------
     // RecyclerView:
     // ---------------------------------------------------------------------------------------------
 
-    private List<FilterableListItem>    unfilteredList;
+    private WaypointStore               waypointStore;
     private FilterableAdapter           recyclerFilterableAdapter;
     private RecyclerView                recyclerView;
+    private LinearLayoutManager         layoutManager;
 
     private Filter                      searchFilter;
+    private QueryScheduler              queryScheduler;
     private SearchView                  searchView;
+    private ProgressBar                 progressBar;
 
     public class PlacesFilterableViewHolder extends FilterableViewHolder {
         private TextView text1;
@@ -80,15 +90,17 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
         public void onUpdate(FilterableListItem filterableListItem) {
             WaypointListItem place = (WaypointListItem) filterableListItem;
 
-            text1.setText(place.name);
+            text1.setText(place.getName());
 
             if (sort_order == SORT_OPTION.DISTANCE) {
-                if (place.distance == 0) {
+                float distance = place.getDistance();
+
+                if (distance == 0) {
                     text2.setText("finding current location..");
                 }
                 else {
                     text2.setText(
-                        DistanceFormatter.format((int)place.distance)  // cast float to int
+                        DistanceFormatter.format((int)distance)  // cast float to int
                     );
                 }
                 text2.setVisibility(View.VISIBLE);
@@ -119,6 +131,22 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
 
         // sort
         initSort();
+
+        // read data from file in the background
+        loadPlaces();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        queryScheduler.cancel();
+        places_locationManager.destroy();
+
+        if (loadTask != null) {
+            loadTask.cancel(true);
+            loadTask = null;
+        }
     }
 
     @Override
@@ -132,7 +160,7 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
     public void onResume() {
         super.onResume();
 
-        if (sort_order == SORT_OPTION.DISTANCE) {
+        if ((sort_order == SORT_OPTION.DISTANCE) && !is_loading) {
             places_locationManager.setInterval(GPS_INTERVAL);
         }
     }
@@ -146,6 +174,7 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
         getMenuInflater().inflate(R.menu.activity_places, menu);
 
         menu.findItem(R.id.action_sort_refresh).setVisible(sort_order == SORT_OPTION.DISTANCE);
+        menu.findItem(R.id.action_search_fuzzy).setChecked(searchFilter.fuzzy);
 
         searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
         initSearch();
@@ -162,6 +191,13 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
                 return true;
             }
 
+            case R.id.action_search_fuzzy: {
+                boolean fuzzy = !menuItem.isChecked();  // approximate matches, ranked by the number of typos
+                menuItem.setChecked(fuzzy);
+                searchFilter.setFuzzy(fuzzy);
+                return true;
+            }
+
             case R.id.action_sort_sequential: {
                 sort_order = SORT_OPTION.SEQUENTIAL;  // the sequential order in which places naturally occur in the XML file
                 places_locationManager.clearInterval();
@@ -180,15 +216,17 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
 
             case R.id.action_sort_distance: {
                 sort_order = SORT_OPTION.DISTANCE;
-                sortRecyclerView();                 // (a) perform an immediate sort based on previously calculated distances,
+                sortRecyclerView();                 // (a) immediately display the order based on previously calculated distances,
                                                     // (b) when an updated position is received, then recalculate all distances and sort again
-                places_locationManager.setInterval(GPS_INTERVAL);
+                if (!is_loading) {
+                    places_locationManager.setInterval(GPS_INTERVAL);
+                }
                 invalidateOptionsMenu();
                 return true;
             }
 
             case R.id.action_sort_refresh: {
-                if (sort_order == SORT_OPTION.DISTANCE) {
+                if ((sort_order == SORT_OPTION.DISTANCE) && !is_loading) {
                     places_locationManager.refresh();
                 }
                 return true;
@@ -244,19 +282,32 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
     }
 
     private void initRecyclerView() {
-        unfilteredList = WaypointListItem.fromFile(filepath, format);
+        waypointStore  = new WaypointStore();
 
         recyclerFilterableAdapter  = new FilterableAdapter(
             R.layout.two_line_list_item,
-            unfilteredList,
+            new ArrayList<FilterableListItem>(),  // populated by "addAll" while the file is loading
             PlacesActivity.this,
-            PlacesFilterableViewHolder.class,
-            PlacesActivity.class,
-            PlacesActivity.this
+            new FilterableViewHolder.Factory() {
+                @Override
+                public FilterableViewHolder create(View view, List<FilterableListItem> filteredList, FilterableListItemOnClickListener listener) {
+                    return new PlacesFilterableViewHolder(view, filteredList, listener);
+                }
+            }
         );
+        recyclerFilterableAdapter.setHasStableIds(true);  // by nonce
+
+        // each layout follows a change to the displayed rows (ex: a filter or an ordering was published, or the list was scrolled)
+        layoutManager = new LinearLayoutManager(PlacesActivity.this) {
+            @Override
+            public void onLayoutCompleted(RecyclerView.State state) {
+                super.onLayoutCompleted(state);
+                onVisibleRowsChanged();
+            }
+        };
 
         recyclerView = findViewById(R.id.rv_places);
-        recyclerView.setLayoutManager(new LinearLayoutManager(PlacesActivity.this));
+        recyclerView.setLayoutManager(layoutManager);
         recyclerView.setHasFixedSize(true);
         recyclerView.setAdapter(recyclerFilterableAdapter);
 
@@ -265,7 +316,18 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
             new DividerItemDecoration(PlacesActivity.this, DividerItemDecoration.VERTICAL)
         );
 
-        searchFilter = recyclerFilterableAdapter.getFilter();
+        // when sorted by distance, only the top of the list is sorted until the user scrolls down
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView rv, int dx, int dy) {
+                onVisibleRowsChanged();
+            }
+        });
+
+        searchFilter   = recyclerFilterableAdapter.getFilter();
+        queryScheduler = new QueryScheduler(searchFilter);  // filter once typing pauses
+
+        progressBar = findViewById(R.id.pb_loading);
     }
 
     private void initSort() {
@@ -274,59 +336,152 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
 
         places_locationManager = new PlacesLocationManager(
             PlacesActivity.this,
-            unfilteredList,
+            waypointStore,
             recyclerFilterableAdapter
         );
     }
 
+    // the list is populated in batches as the file is parsed, so the first rows are visible almost immediately.
+    // sorting is deferred until all of the data has been loaded.
+    private void loadPlaces() {
+        is_loading = true;
+        progressBar.setVisibility(View.VISIBLE);
+
+        loadTask = new AsyncTask<Void, List<WaypointListItem>, Boolean>() {
+            @Override
+            protected Boolean doInBackground(final Void ... params) {
+                return WaypointListItem.fromFile(filepath, format, getCacheDir(), waypointStore, new AbstractParser.BatchListener() {
+                    @Override
+                    public boolean onBatch(ArrayList<WaypointListItem> batch) {
+                        if (isCancelled()) return false;
+
+                        publishProgress(batch);
+                        return true;
+                    }
+                });
+            }
+
+            @Override
+            protected void onProgressUpdate(final List<WaypointListItem> ... batches) {
+                if (isCancelled()) return;
+
+                for (List<WaypointListItem> batch : batches) {
+                    recyclerFilterableAdapter.addAll(batch);
+                }
+            }
+
+            @Override
+            protected void onPostExecute(final Boolean complete) {
+                is_loading = false;
+                loadTask   = null;
+                progressBar.setVisibility(View.GONE);
+
+                if (!complete) {
+                    // the points that were read before the error remain in the list
+                    Toast.makeText(PlacesActivity.this, "Error reading file: only the first " + waypointStore.size() + " places are shown", Toast.LENGTH_LONG).show();
+                }
+
+                // the first sort is queued before the indices are built, and doesn't wait for them
+                if (sort_order != SORT_OPTION.SEQUENTIAL) {
+                    sortRecyclerView();
+                }
+
+                places_locationManager.onWaypointsLoaded();
+                buildSearchIndex();
+                if ((sort_order == SORT_OPTION.DISTANCE) && !isFinishing()) {
+                    places_locationManager.setInterval(GPS_INTERVAL);
+                }
+            }
+        }.execute();
+    }
+
+    // large lists are searched through an index of trigrams, which is built in the background
+    private void buildSearchIndex() {
+        final List<FilterableListItem> items = recyclerFilterableAdapter.getUnfilteredItems();  // an immutable snapshot
+
+        if (items.size() < SEARCH_INDEX_MIN_SIZE) return;
+
+        new AsyncTask<Void, Void, TrigramIndex>() {
+            @Override
+            protected TrigramIndex doInBackground(final Void ... params) {
+                return TrigramIndex.build(items);
+            }
+
+            @Override
+            protected void onPostExecute(final TrigramIndex index) {
+                recyclerFilterableAdapter.setSearchIndex(index);
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);  // not queued ahead of a sort
+    }
+
     private void initSearch() {
         searchView.setMaxWidth(Integer.MAX_VALUE);
 
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String constraint) {
-                searchFilter.query(constraint);
+                queryScheduler.submit(constraint);
                 return false;
             }
 
             @Override
             public boolean onQueryTextChange(String constraint) {
-                searchFilter.query(constraint);
+                queryScheduler.schedule(constraint);
                 return false;
             }
         });
     }
 
-    private void sortRecyclerView() {
-        final Comparator comparator;
-
-        switch(sort_order) {
-            case SEQUENTIAL:
-                comparator = WaypointListItem.sequentialOrderComparator;
-                break;
-            case ALPHABETIC:
-                comparator = WaypointListItem.alphabeticOrderComparator;
-                break;
-            case DISTANCE:
-                comparator = WaypointListItem.distanceOrderComparator;
-                break;
-            default:
-                comparator = null;
-                break;
+    // when sorted by distance, the last visible row is mapped to its position in the ordering by distance,
+    // which decides how much of the list is sorted and compared for each new position
+    private void onVisibleRowsChanged() {
+        if (sort_order != SORT_OPTION.DISTANCE) return;
+
+        int pos = recyclerFilterableAdapter.getOrderedPosition(
+            layoutManager.findLastVisibleItemPosition()
+        );
+        if (pos >= 0) {
+            places_locationManager.onPositionVisible(pos);
         }
+    }
 
-        if (comparator == null) return;
+    private void sortRecyclerView() {
+        if (is_loading) return;  // sort after all data has been loaded
+
+        final SORT_OPTION order_by = sort_order;
 
-        new AsyncTask<Void, Void, Void>() {
+        if (order_by == SORT_OPTION.DISTANCE) {
+            // show the ordering by distance from the most recent position, if there is one
+            if (places_locationManager.resumeOrdering()) return;
+        }
+        else {
+            places_locationManager.pauseOrdering();
+        }
+
+        // the adapter's items are never reordered.
+        // the adapter reads them through a permutation of positions, which is sorted by primitive keys.
+        // the sequential and alphabetic permutations are only sorted once, so switching between sort orders costs O(n).
+        new AsyncTask<Void, Void, int[]>() {
             @Override
-            protected Void doInBackground(final Void ... params) {
-                Collections.sort(unfilteredList, comparator);
-                return null;
+            protected int[] doInBackground(final Void ... params) {
+                switch(order_by) {
+                    case SEQUENTIAL:
+                        return waypointStore.getSequentialOrder();
+                    case ALPHABETIC:
+                        return waypointStore.getAlphabeticOrder();
+                    case DISTANCE:
+                        return waypointStore.getDistanceOrder();
+                    default:
+                        return null;
+                }
             }
  
             @Override
-            protected void onPostExecute(final Void result) {
-                recyclerFilterableAdapter.refresh();
+            protected void onPostExecute(final int[] order) {
+                if (order == null) return;
+                if (order_by != sort_order) return;  // superseded
+
+                recyclerFilterableAdapter.setOrder(order);
             }
         }.execute();
     }
@@ -340,7 +495,7 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
         //     format: "geo:0,0?q=latitude,longitude(label)"
         //     G-Maps: https://developers.google.com/maps/documentation/urls/android-intents#search_for_a_location
         //     OsmAnd: https://github.com/osmandapp/Osmand/blob/f9cd73d4f02b45c429a94e5444124cc6f3463111/OsmAnd/AndroidManifest.xml#L357
-        uri = "geo:0,0?q=" + place.lat + "," + place.lon + "(" + Uri.encode(place.name).replace("(","%28").replace(")","%29") + ")";
+        uri = "geo:0,0?q=" + place.getLatLon() + "(" + Uri.encode(place.getName()).replace("(","%28").replace(")","%29") + ")";
         in  = new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
         if (in.resolveActivity(pm) != null) {
             startActivity(in);
@@ -351,7 +506,7 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
         //     format: "google.navigation:q=latitude,longitude"
         //     G-Maps: https://developers.google.com/maps/documentation/urls/android-intents#launch_turn-by-turn_navigation
         //     OsmAnd: https://github.com/osmandapp/Osmand/blob/f9cd73d4f02b45c429a94e5444124cc6f3463111/OsmAnd/AndroidManifest.xml#L289
-        uri = "google.navigation:q=" + place.lat + "," + place.lon;
+        uri = "google.navigation:q=" + place.getLatLon();
         in  = new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
         if (in.resolveActivity(pm) != null) {
             startActivity(in);
@@ -362,7 +517,7 @@ public class PlacesActivity extends AppCompatActivity implements FilterableListI
         //     format: "geo:latitude,longitude?z=zoom"
         //     G-Maps: https://developers.google.com/maps/documentation/urls/android-intents#display_a_map
         //     OsmAnd: https://github.com/osmandapp/Osmand/blob/f9cd73d4f02b45c429a94e5444124cc6f3463111/OsmAnd/AndroidManifest.xml#L357
-        uri = "geo:" + place.lat + "," + place.lon;
+        uri = "geo:" + place.getLatLon();
         in  = new Intent(Intent.ACTION_VIEW, Uri.parse(uri));
         if (in.resolveActivity(pm) != null) {
             startActivity(in);
@@ -0,0 +1,211 @@
+package com.github.warren_bank.myplaces.caches;
+
+import com.github.warren_bank.myplaces.models.WaypointListItem;
+import com.github.warren_bank.myplaces.models.WaypointStore;
+import com.github.warren_bank.myplaces.parsers.AbstractParser;
+
+import android.os.AsyncTask;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+// =================================================
+// binary cache of the waypoints extracted from a GPX or KML file.
+//
+// one cache file per data file, keyed by: path, size, mtime.
+// when any part of the key doesn't match, the cache is stale and the data file needs to be parsed again.
+//
+// format (big-endian):
+//   int      MAGIC
+//   int      VERSION
+//   long     size of data file
+//   long     mtime of data file
+//   int      length of path, followed by the chars in path
+//   int      count of waypoints
+//   double[] lat        (count)
+//   double[] lon        (count)
+//   int[]    nonce      (count)
+//   int[]    name index (count)
+//   int      count of unique names
+//   int[]    name offsets into the char table (unique + 1)
+//   char[]   char table
+// =================================================
+public final class WaypointCache {
+    private static final int    MAGIC     = 0x4D504C43;  // "MPLC"
+    private static final int    VERSION   = 1;
+    private static final String DIRNAME   = "waypoints";
+
+    private WaypointCache() {
+    }
+
+    public static File getCacheFile(File cacheDir, String filepath) {
+        File dir = new File(cacheDir, DIRNAME);
+        String filename = Integer.toHexString(filepath.hashCode()) + ".bin";
+        return new File(dir, filename);
+    }
+
+    // "store" must be empty.
+    // return false when the cache is missing or stale, in which case neither the store nor the listener are called.
+    public static boolean read(File cacheDir, String filepath, WaypointStore store, AbstractParser.BatchListener listener) {
+        File dataFile  = new File(filepath);
+        File cacheFile = getCacheFile(cacheDir, filepath);
+        if (!cacheFile.isFile()) return false;
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(cacheFile, "r");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // key
+            if (buf.getInt()  != MAGIC)                    return false;
+            if (buf.getInt()  != VERSION)                  return false;
+            if (buf.getLong() != dataFile.length())        return false;
+            if (buf.getLong() != dataFile.lastModified())  return false;
+
+            char[] path = new char[buf.getInt()];
+            buf.asCharBuffer().get(path);
+            buf.position(buf.position() + (path.length * 2));
+            if (!filepath.equals(new String(path)))        return false;
+
+            // columns
+            int count = buf.getInt();
+
+            double[] lat = new double[count];
+            buf.asDoubleBuffer().get(lat);
+            buf.position(buf.position() + (count * 8));
+
+            double[] lon = new double[count];
+            buf.asDoubleBuffer().get(lon);
+            buf.position(buf.position() + (count * 8));
+
+            int[] nonce = new int[count];
+            buf.asIntBuffer().get(nonce);
+            buf.position(buf.position() + (count * 4));
+
+            int[] nameIndex = new int[count];
+            buf.asIntBuffer().get(nameIndex);
+            buf.position(buf.position() + (count * 4));
+
+            // name table
+            int uniqueCount = buf.getInt();
+
+            int[] offsets = new int[uniqueCount + 1];
+            buf.asIntBuffer().get(offsets);
+            buf.position(buf.position() + (offsets.length * 4));
+
+            char[] chars = new char[offsets[uniqueCount]];
+            buf.asCharBuffer().get(chars);
+
+            String[] names = new String[uniqueCount];
+            for (int i=0; i < uniqueCount; i++) {
+                names[i] = new String(chars, offsets[i], offsets[i+1] - offsets[i]);
+            }
+
+            // waypoints
+            store.adopt(lat, lon, nonce, nameIndex, names);  // without another copy
+
+            ArrayList<WaypointListItem> batch = new ArrayList<WaypointListItem>(AbstractParser.BATCH_SIZE);
+            for (int i=0; i < count; i++) {
+                batch.add(
+                    new WaypointListItem(store, i)
+                );
+
+                if ((batch.size() == AbstractParser.BATCH_SIZE) || (i == (count - 1))) {
+                    if (!listener.onBatch(batch)) break;
+
+                    batch = new ArrayList<WaypointListItem>(AbstractParser.BATCH_SIZE);
+                }
+            }
+            return true;
+        }
+        catch(Exception e) {
+            // corrupt cache
+            return false;
+        }
+        finally {
+            closeQuietly(raf);
+        }
+    }
+
+    // "length" and "lastModified" describe the data file as it was before it was parsed,
+    // so a file that changes while it is being parsed leaves a stale cache, rather than one that claims to match the new file.
+    public static void write(File cacheDir, String filepath, long length, long lastModified, WaypointStore store) {
+        File cacheFile = getCacheFile(cacheDir, filepath);
+        File tempFile  = new File(cacheFile.getPath() + ".tmp");
+
+        File dir = cacheFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+
+        int count       = store.size();
+        int uniqueCount = store.getUniqueNameCount();
+
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024));
+
+            // key
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(filepath.length());
+            out.writeChars(filepath);
+
+            // columns
+            out.writeInt(count);
+            for (int i=0; i < count; i++) out.writeDouble(store.getLatitude(i));
+            for (int i=0; i < count; i++) out.writeDouble(store.getLongitude(i));
+            for (int i=0; i < count; i++) out.writeInt(store.getNonce(i));
+            for (int i=0; i < count; i++) out.writeInt(store.getNameIndex(i));
+
+            // name table
+            out.writeInt(uniqueCount);
+            int offset = 0;
+            for (int i=0; i < uniqueCount; i++) {
+                out.writeInt(offset);
+                offset += store.getUniqueName(i).length();
+            }
+            out.writeInt(offset);
+            for (int i=0; i < uniqueCount; i++) {
+                out.writeChars(store.getUniqueName(i));
+            }
+
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(cacheFile)) {
+                tempFile.delete();
+            }
+        }
+        catch(Exception e) {
+            closeQuietly(out);
+            tempFile.delete();
+        }
+    }
+
+    public static void writeAsync(final File cacheDir, final String filepath, final long length, final long lastModified, final WaypointStore store) {
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(cacheDir, filepath, length, lastModified, store);
+            }
+        });
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) return;
+
+        try {
+            closeable.close();
+        }
+        catch (IOException e){}
+    }
+}
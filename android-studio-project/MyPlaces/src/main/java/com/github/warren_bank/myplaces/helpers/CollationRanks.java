@@ -0,0 +1,120 @@
+package com.github.warren_bank.myplaces.helpers;
+
+import java.text.Collator;
+
+/**
+ * Ranks strings in locale-correct alphabetic order (ex: "Caf&eacute;" sorts next to "Cafe", not after "Cz").
+ * <p>
+ * Each string is converted once into the byte key of a {@link Collator}. Comparing two keys as unsigned bytes
+ * gives the same result as {@link Collator#compare}, without repeating the (much slower) collation of the strings.
+ * <p>
+ * The first 8 bytes of each key are packed into a {@code long} and radix sorted.
+ * Only strings that share the same 8-byte prefix are sorted again, by the next 8 bytes of their keys.
+ */
+public final class CollationRanks {
+    private static final int PREFIX_BYTES             = 8;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private CollationRanks() {
+    }
+
+    /**
+     * @return the rank of each of the strings in [0, count). Strings that collate as equal have the same rank.
+     */
+    public static int[] rank(String[] strings, int count) {
+        return rank(strings, count, Collator.getInstance());
+    }
+
+    public static int[] rank(String[] strings, int count, Collator collator) {
+        byte[][] keys   = new byte[count][];
+        long[]   prefix = new long[count];
+        int[]    order  = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            keys[i]  = collator.getCollationKey(strings[i]).toByteArray();
+            order[i] = i;
+        }
+
+        sort(order, keys, prefix, 0, count, 0);
+
+        int[] rank = new int[count];
+        int   r    = 0;
+        for (int i = 0; i < count; i++) {
+            if ((i > 0) && (compare(keys[order[i]], keys[order[i - 1]], 0) != 0)) {
+                r++;
+            }
+            rank[order[i]] = r;
+        }
+        return rank;
+    }
+
+    // MSD radix sort: sort order[lo, hi) by the 8 bytes of each key at "offset", then each run of equal bytes by the next 8 bytes.
+    private static void sort(int[] order, byte[][] keys, long[] prefix, int lo, int hi, int offset) {
+        if ((hi - lo) <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(order, keys, lo, hi, offset);
+            return;
+        }
+
+        int maxLength = 0;
+        for (int i = lo; i < hi; i++) {
+            byte[] key = keys[order[i]];
+
+            prefix[order[i]] = prefix(key, offset) ^ Long.MIN_VALUE;  // unsigned order
+            maxLength        = Math.max(maxLength, key.length);
+        }
+        if (offset >= maxLength) {
+            // all of the bytes are equal, so only the lengths can differ
+            for (int i = lo; i < hi; i++) {
+                prefix[order[i]] = keys[order[i]].length;
+            }
+            IndexSort.sort(order, prefix, lo, hi);
+            return;
+        }
+
+        IndexSort.sort(order, prefix, lo, hi);
+
+        int start = lo;
+        for (int i = lo + 1; i <= hi; i++) {
+            if ((i == hi) || (prefix[order[i]] != prefix[order[start]])) {
+                if ((i - start) > 1) {
+                    sort(order, keys, prefix, start, i, offset + PREFIX_BYTES);
+                }
+                start = i;
+            }
+        }
+    }
+
+    // big-endian, padded with zeros
+    private static long prefix(byte[] key, int offset) {
+        long val = 0;
+        for (int i = offset; i < (offset + PREFIX_BYTES); i++) {
+            val = (val << 8) | ((i < key.length) ? (key[i] & 0xFF) : 0);
+        }
+        return val;
+    }
+
+    // unsigned lexicographic order of the bytes from "offset", then length
+    private static int compare(byte[] a, byte[] b, int offset) {
+        int length = Math.min(a.length, b.length);
+
+        for (int i = offset; i < length; i++) {
+            int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (diff != 0) return diff;
+        }
+        return a.length - b.length;
+    }
+
+    // stable
+    private static void insertionSort(int[] order, byte[][] keys, int lo, int hi, int offset) {
+        for (int i = lo + 1; i < hi; i++) {
+            int index = order[i];
+            int j     = i - 1;
+
+            while ((j >= lo) && (compare(keys[order[j]], keys[index], offset) > 0)) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = index;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.warren_bank.myplaces.helpers;
+
+/**
+ * Parses a latitude or longitude from a range of characters, without creating any intermediate Strings.
+ * <p>
+ * Accepts the same formats as {@code android.location.Location.convert(String)}:
+ * <ul>
+ *     <li>{@code [+-]DDD.DDDDD} decimal degrees</li>
+ *     <li>{@code [+-]DDD:MM.MMMMM} degrees and decimal minutes</li>
+ *     <li>{@code [+-]DDD:MM:SS.SSSSS} degrees, minutes and decimal seconds</li>
+ * </ul>
+ * Leading and trailing whitespace is ignored.
+ * Instead of throwing an exception, {@link Double#NaN} is returned when the input is invalid.
+ */
+public final class CoordinateParser {
+    private static final long MAX_EXACT_MANTISSA = (1L << 53);  // largest integer that a double can represent exactly
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private CoordinateParser() {
+    }
+
+    public static double parse(CharSequence chars) {
+        if (chars == null) return Double.NaN;
+
+        return parse(chars, 0, chars.length());
+    }
+
+    /**
+     * @param chars the characters to parse.
+     * @param start index of the first character (inclusive).
+     * @param end index of the last character (exclusive).
+     * @return the coordinate in decimal degrees, or {@link Double#NaN} if the characters don't contain a valid coordinate.
+     */
+    public static double parse(CharSequence chars, int start, int end) {
+        while ((start < end) && Character.isWhitespace(chars.charAt(start))) start++;
+        while ((end > start) && Character.isWhitespace(chars.charAt(end - 1))) end--;
+        if (start >= end) return Double.NaN;
+
+        boolean negative = false;
+        char sign = chars.charAt(start);
+        if ((sign == '-') || (sign == '+')) {
+            negative = (sign == '-');
+            start++;
+        }
+
+        int colon1 = indexOf(chars, ':', start, end);
+        if (colon1 < 0) {
+            double val = parseDecimal(chars, start, end);
+            if (Double.isNaN(val)) val = parseFallback(chars, start, end);
+            return negative ? -val : val;
+        }
+
+        int colon2 = indexOf(chars, ':', colon1 + 1, end);
+        if ((colon2 >= 0) && (indexOf(chars, ':', colon2 + 1, end) >= 0)) return Double.NaN;
+
+        boolean secPresent = (colon2 >= 0);
+        double  deg        = parseInteger(chars, start, colon1);
+        double  min;
+        double  sec;
+
+        if (secPresent) {
+            min = parseInteger(chars, colon1 + 1, colon2);
+            sec = parseDecimal(chars, colon2 + 1, end);
+        }
+        else {
+            min = parseDecimal(chars, colon1 + 1, end);
+            sec = 0.0;
+        }
+        if (Double.isNaN(deg) || Double.isNaN(min) || Double.isNaN(sec)) return Double.NaN;
+
+        // deg must be in [0, 179] except for the case of -180 degrees
+        boolean isNegative180 = negative && (deg == 180) && (min == 0) && (sec == 0);
+        if ((deg > 179) && !isNegative180) return Double.NaN;
+
+        // min must be in [0, 59] if seconds are present, otherwise [0.0, 60.0)
+        if ((min >= 60) || (secPresent && (min > 59))) return Double.NaN;
+
+        // sec must be in [0.0, 60.0)
+        if (sec >= 60) return Double.NaN;
+
+        double val = ((deg * 3600.0) + (min * 60.0) + sec) / 3600.0;
+        return negative ? -val : val;
+    }
+
+    // unsigned integer: "DDD"
+    private static double parseInteger(CharSequence chars, int start, int end) {
+        if (start >= end) return Double.NaN;
+
+        long val = 0;
+        for (int i = start; i < end; i++) {
+            int digit = chars.charAt(i) - '0';
+            if ((digit < 0) || (digit > 9)) return Double.NaN;
+
+            val = (val * 10) + digit;
+            if (val > Integer.MAX_VALUE) return Double.NaN;
+        }
+        return (double) val;
+    }
+
+    // unsigned decimal: "DDD", "DDD.", ".DDD", "DDD.DDD"
+    // the result is exact (correctly rounded) because both the mantissa and the power of ten are exactly representable.
+    // NaN is returned for anything else, including mantissas that are too long to be exact.
+    private static double parseDecimal(CharSequence chars, int start, int end) {
+        long    mantissa  = 0;
+        int     scale     = 0;
+        int     digits    = 0;
+        boolean fraction  = false;
+
+        for (int i = start; i < end; i++) {
+            char c = chars.charAt(i);
+
+            if (c == '.') {
+                if (fraction) return Double.NaN;
+                fraction = true;
+                continue;
+            }
+
+            int digit = c - '0';
+            if ((digit < 0) || (digit > 9)) return Double.NaN;
+
+            mantissa = (mantissa * 10) + digit;
+            if (mantissa >= MAX_EXACT_MANTISSA) return Double.NaN;
+
+            digits++;
+            if (fraction) scale++;
+        }
+
+        if (digits == 0) return Double.NaN;
+        if (scale >= POWERS_OF_TEN.length) return Double.NaN;
+
+        return (scale == 0) ? (double) mantissa : ((double) mantissa / POWERS_OF_TEN[scale]);
+    }
+
+    // rare inputs that the fast path doesn't handle (ex: exponent notation, very long mantissa).
+    private static double parseFallback(CharSequence chars, int start, int end) {
+        try {
+            return Double.parseDouble(chars.subSequence(start, end).toString());
+        }
+        catch(NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int indexOf(CharSequence chars, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (chars.charAt(i) == c) return i;
+        }
+        return -1;
+    }
+}
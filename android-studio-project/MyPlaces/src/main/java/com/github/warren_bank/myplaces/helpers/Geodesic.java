@@ -0,0 +1,129 @@
+package com.github.warren_bank.myplaces.helpers;
+
+/**
+ * Distance kernel that works on primitive arrays and has no dependency on the Android framework.
+ * <p>
+ * Waypoint coordinates are converted once by {@link #precompute} into radians and {@code cos(lat)},
+ * so each distance only needs a few multiplications and (for haversine) one sin/asin/sqrt.
+ * <p>
+ * Both modes model the Earth as a sphere with the mean radius {@link #EARTH_RADIUS}:
+ * <ul>
+ *     <li>{@link Mode#HAVERSINE}:
+ *         exact great-circle distance on the sphere.
+ *         Compared to the WGS84 ellipsoid (ex: {@code Location.distanceTo}), the error is at most ~0.5%.</li>
+ *     <li>{@link Mode#EQUIRECTANGULAR}:
+ *         planar approximation without any trigonometric call per point, many times faster than haversine.
+ *         Compared to haversine, at latitudes below 70 degrees the relative error is
+ *         below 0.0001% up to 10 km, below 0.01% up to 100 km and below 1% up to 1000 km.
+ *         The error grows near the poles (ex: ~3% at 1000 km below 80 degrees).</li>
+ * </ul>
+ */
+public final class Geodesic {
+    public static final double EARTH_RADIUS = 6371008.8;  // meters, IUGG mean radius
+
+    public static enum Mode { HAVERSINE, EQUIRECTANGULAR }
+
+    private static final double DEG_TO_RAD = Math.PI / 180.0;
+    private static final double TWO_PI     = Math.PI * 2.0;
+
+    private Geodesic() {
+    }
+
+    /**
+     * Convert coordinates in the range [start, end) from degrees to the precomputed form used by the kernel.
+     *
+     * @param latDeg latitudes in decimal degrees.
+     * @param lonDeg longitudes in decimal degrees.
+     * @param latRad output: latitudes in radians.
+     * @param lonRad output: longitudes in radians.
+     * @param cosLat output: cosine of each latitude.
+     */
+    public static void precompute(
+        double[] latDeg, double[] lonDeg, int start, int end,
+        double[] latRad, double[] lonRad, double[] cosLat
+    ) {
+        for (int i = start; i < end; i++) {
+            double lat = latDeg[i] * DEG_TO_RAD;
+
+            latRad[i] = lat;
+            lonRad[i] = lonDeg[i] * DEG_TO_RAD;
+            cosLat[i] = Math.cos(lat);
+        }
+    }
+
+    /**
+     * Compute the distance from one position to every point in the range [start, end).
+     *
+     * @param fromLatDeg latitude of the position in decimal degrees.
+     * @param fromLonDeg longitude of the position in decimal degrees.
+     * @param out output: distance in meters.
+     */
+    public static void distances(
+        Mode mode, double fromLatDeg, double fromLonDeg,
+        double[] latRad, double[] lonRad, double[] cosLat, int start, int end,
+        float[] out
+    ) {
+        double lat0 = fromLatDeg * DEG_TO_RAD;
+        double lon0 = fromLonDeg * DEG_TO_RAD;
+        double cos0 = Math.cos(lat0);
+
+        switch (mode) {
+            case EQUIRECTANGULAR:
+                for (int i = start; i < end; i++) {
+                    out[i] = (float) equirectangular(lat0, lon0, cos0, latRad[i], lonRad[i], cosLat[i]);
+                }
+                break;
+            case HAVERSINE:
+            default:
+                for (int i = start; i < end; i++) {
+                    out[i] = (float) haversine(lat0, lon0, cos0, latRad[i], lonRad[i], cosLat[i]);
+                }
+                break;
+        }
+    }
+
+    /**
+     * @return great-circle distance in meters between two points given in radians.
+     */
+    public static double haversine(double lat1, double lon1, double cosLat1, double lat2, double lon2, double cosLat2) {
+        double sinHalfDLat = Math.sin((lat2 - lat1) * 0.5);
+        double sinHalfDLon = Math.sin((lon2 - lon1) * 0.5);
+        double a = (sinHalfDLat * sinHalfDLat) + (cosLat1 * cosLat2 * sinHalfDLon * sinHalfDLon);
+
+        if (a > 1.0) a = 1.0;  // rounding
+
+        return 2.0 * EARTH_RADIUS * Math.asin(Math.sqrt(a));
+    }
+
+    /**
+     * @return approximate distance in meters between two points given in radians.
+     */
+    public static double equirectangular(double lat1, double lon1, double cosLat1, double lat2, double lon2, double cosLat2) {
+        double dLon = lon2 - lon1;
+
+        // shortest way around the antimeridian
+        if (dLon > Math.PI)       dLon -= TWO_PI;
+        else if (dLon < -Math.PI) dLon += TWO_PI;
+
+        double x = dLon * 0.5 * (cosLat1 + cosLat2);
+        double y = lat2 - lat1;
+
+        return EARTH_RADIUS * Math.sqrt((x * x) + (y * y));
+    }
+
+    /**
+     * Convenience for a single pair of points in decimal degrees.
+     *
+     * @return distance in meters.
+     */
+    public static double distance(Mode mode, double lat1Deg, double lon1Deg, double lat2Deg, double lon2Deg) {
+        double lat1 = lat1Deg * DEG_TO_RAD;
+        double lon1 = lon1Deg * DEG_TO_RAD;
+        double lat2 = lat2Deg * DEG_TO_RAD;
+        double lon2 = lon2Deg * DEG_TO_RAD;
+
+        return (mode == Mode.EQUIRECTANGULAR)
+            ? equirectangular(lat1, lon1, Math.cos(lat1), lat2, lon2, Math.cos(lat2))
+            : haversine(lat1, lon1, Math.cos(lat1), lat2, lon2, Math.cos(lat2));
+    }
+}
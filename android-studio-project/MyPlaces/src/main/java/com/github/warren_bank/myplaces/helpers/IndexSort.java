@@ -0,0 +1,200 @@
+package com.github.warren_bank.myplaces.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Orders arrays of indices by primitive keys, without boxing and without a {@code Comparator}.
+ * <p>
+ * {@code order} holds indices into {@code keys}. Only the order of the indices is changed.
+ */
+public final class IndexSort {
+
+    private IndexSort() {
+    }
+
+    /**
+     * Partial ordering (quickselect): rearrange order[lo, hi) so that every index in [lo, k)
+     * has a key that is less than or equal to the key of every index in [k, hi).
+     * Neither side is sorted. Expected cost is O(hi - lo).
+     * <p>
+     * Keys must not be NaN.
+     */
+    public static void select(int[] order, float[] keys, int lo, int hi, int k) {
+        if ((k <= lo) || (k >= hi)) return;
+
+        hi--;  // inclusive
+        while (hi > lo) {
+            float pivot = keys[order[(lo + hi) >>> 1]];
+
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) i++;
+                while (keys[order[j]] > pivot) j--;
+                if (i <= j) {
+                    int tmp  = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            // [lo, j] <= pivot, (j, i) == pivot, [i, hi] >= pivot
+            if (k <= j)     hi = j;
+            else if (k > i) lo = i;
+            else            return;
+        }
+    }
+
+    /**
+     * Stable sort of order[lo, hi) by ascending key.
+     * <p>
+     * Keys must not be NaN. The raw bits of each key are mapped to an int with the same order, then radix sorted.
+     */
+    public static void sort(int[] order, float[] keys, int lo, int hi) {
+        int count = hi - lo;
+        if (count < 2) return;
+
+        int[] sortKeys = new int[count];
+        for (int i = 0; i < count; i++) {
+            int bits    = Float.floatToIntBits(keys[order[lo + i]]);
+            sortKeys[i] = bits ^ ((bits >> 31) & 0x7FFFFFFF);  // negative floats are ordered in reverse
+        }
+
+        sort(order, lo, sortKeys);
+    }
+
+    /**
+     * Stable sort of order[lo, hi) by ascending key.
+     */
+    public static void sort(int[] order, int[] keys, int lo, int hi) {
+        int count = hi - lo;
+        if (count < 2) return;
+
+        int[] sortKeys = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortKeys[i] = keys[order[lo + i]];
+        }
+
+        sort(order, lo, sortKeys);
+    }
+
+    /**
+     * Stable sort of order[lo, hi) by ascending key.
+     */
+    public static void sort(int[] order, long[] keys, int lo, int hi) {
+        int count = hi - lo;
+        if (count < 2) return;
+
+        long[] keysA  = new long[count];
+        int[]  indexA = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexA[i] = order[lo + i];
+            keysA[i]  = keys[indexA[i]] ^ Long.MIN_VALUE;  // signed order, as unsigned bytes
+        }
+
+        long[] keysB  = new long[count];
+        int[]  indexB = new int[count];
+        int[]  counts = new int[256];
+
+        for (int shift = 0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[(int) (keysA[i] >>> shift) & 0xFF]++;
+            }
+
+            if (counts[(int) (keysA[0] >>> shift) & 0xFF] == count) continue;
+
+            int sum = 0;
+            for (int b = 0; b < 256; b++) {
+                int c     = counts[b];
+                counts[b] = sum;
+                sum      += c;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int dest     = counts[(int) (keysA[i] >>> shift) & 0xFF]++;
+                keysB[dest]  = keysA[i];
+                indexB[dest] = indexA[i];
+            }
+
+            long[] tk = keysA;  keysA  = keysB;  keysB  = tk;
+            int[]  ti = indexA; indexA = indexB; indexB = ti;
+        }
+
+        System.arraycopy(indexA, 0, order, lo, count);
+    }
+
+    // =================================================
+    // internal
+    // =================================================
+
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    // LSD radix sort, 8 bits per pass.
+    // sortKeys[i] is the key of order[lo + i].
+    private static void sort(int[] order, int lo, int[] sortKeys) {
+        int count = sortKeys.length;
+
+        if (count < INSERTION_SORT_THRESHOLD) {
+            insertionSort(order, lo, sortKeys);
+            return;
+        }
+
+        int[] keysA  = sortKeys;
+        int[] indexA = new int[count];
+        int[] keysB  = new int[count];
+        int[] indexB = new int[count];
+        int[] counts = new int[256];
+
+        System.arraycopy(order, lo, indexA, 0, count);
+
+        for (int shift = 0; shift < 32; shift += 8) {
+            int flip = (shift == 24) ? 0x80 : 0;  // signed order of the most significant byte
+
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < count; i++) {
+                counts[((keysA[i] >>> shift) & 0xFF) ^ flip]++;
+            }
+
+            // skip a pass when every key has the same value for this byte (ex: small or similar keys)
+            if (counts[((keysA[0] >>> shift) & 0xFF) ^ flip] == count) continue;
+
+            int sum = 0;
+            for (int b = 0; b < 256; b++) {
+                int c     = counts[b];
+                counts[b] = sum;
+                sum      += c;
+            }
+
+            for (int i = 0; i < count; i++) {
+                int dest     = counts[((keysA[i] >>> shift) & 0xFF) ^ flip]++;
+                keysB[dest]  = keysA[i];
+                indexB[dest] = indexA[i];
+            }
+
+            int[] t;
+            t = keysA;  keysA  = keysB;  keysB  = t;
+            t = indexA; indexA = indexB; indexB = t;
+        }
+
+        System.arraycopy(indexA, 0, order, lo, count);
+    }
+
+    private static void insertionSort(int[] order, int lo, int[] sortKeys) {
+        for (int i = 1; i < sortKeys.length; i++) {
+            int key   = sortKeys[i];
+            int index = order[lo + i];
+            int j     = i - 1;
+
+            while ((j >= 0) && (sortKeys[j] > key)) {
+                sortKeys[j + 1]   = sortKeys[j];
+                order[lo + j + 1] = order[lo + j];
+                j--;
+            }
+            sortKeys[j + 1]   = key;
+            order[lo + j + 1] = index;
+        }
+    }
+}
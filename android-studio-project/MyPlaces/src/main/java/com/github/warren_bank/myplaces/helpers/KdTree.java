@@ -0,0 +1,253 @@
+package com.github.warren_bank.myplaces.helpers;
+
+import java.util.Arrays;
+
+/**
+ * Static k-d tree over points on the Earth's surface, for incremental nearest-neighbor queries.
+ * <p>
+ * Points are mapped to 3D unit vectors, so the straight-line (chord) distance between two vectors
+ * increases with the great-circle distance between the points. This avoids any special case at the
+ * antimeridian or the poles, and the order of the results is exactly the haversine order.
+ * <p>
+ * The tree is implicit: the points are permuted so that every range [lo, hi) is a node
+ * whose median (lo + hi) / 2 splits the range on axis (depth % 3). No node objects are allocated.
+ * <p>
+ * {@link Search} returns the points one at a time, nearest first, by best-first traversal.
+ * Each call to {@link Search#next()} costs O(log n) amortized, so the first k points cost O(k log n).
+ */
+public final class KdTree {
+    private static final int LEAF_SIZE = 8;
+
+    private final int      size;
+    private final int[]    indices;  // tree order -> index of the point in the arrays passed to the constructor
+    private final double[] xyz;      // tree order -> unit vector
+
+    /**
+     * @param latDeg latitudes in decimal degrees.
+     * @param lonDeg longitudes in decimal degrees.
+     * @param size number of points to index, starting at index 0.
+     */
+    public KdTree(double[] latDeg, double[] lonDeg, int size) {
+        this.size    = size;
+        this.indices = new int[size];
+        this.xyz     = new double[size * 3];
+
+        double[] coords = new double[size * 3];
+        for (int i = 0; i < size; i++) {
+            toUnitVector(latDeg[i], lonDeg[i], coords, i * 3);
+            indices[i] = i;
+        }
+
+        build(coords, 0, size, 0);
+
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(coords, indices[i] * 3, xyz, i * 3, 3);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Search nearest(double latDeg, double lonDeg) {
+        return new Search(latDeg, lonDeg);
+    }
+
+    // =================================================
+    // build
+    // =================================================
+
+    private void build(double[] coords, int lo, int hi, int depth) {
+        while ((hi - lo) > LEAF_SIZE) {
+            int mid  = (lo + hi) >>> 1;
+            int axis = depth % 3;
+
+            select(coords, lo, hi - 1, mid, axis);
+
+            build(coords, lo, mid, depth + 1);  // recursion depth is O(log n)
+            lo = mid + 1;
+            depth++;
+        }
+    }
+
+    // quickselect: partially order indices[lo..hi] so that indices[k] holds the median on the axis
+    private void select(double[] coords, int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            int    p     = (lo + hi) >>> 1;
+            double pivot = coords[(indices[p] * 3) + axis];
+
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (coords[(indices[i] * 3) + axis] < pivot) i++;
+                while (coords[(indices[j] * 3) + axis] > pivot) j--;
+                if (i <= j) {
+                    int tmp    = indices[i];
+                    indices[i] = indices[j];
+                    indices[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j)      hi = j;
+            else if (k >= i) lo = i;
+            else             return;
+        }
+    }
+
+    private static void toUnitVector(double latDeg, double lonDeg, double[] out, int offset) {
+        double lat    = Math.toRadians(latDeg);
+        double lon    = Math.toRadians(lonDeg);
+        double cosLat = Math.cos(lat);
+
+        out[offset]     = cosLat * Math.cos(lon);
+        out[offset + 1] = cosLat * Math.sin(lon);
+        out[offset + 2] = Math.sin(lat);
+    }
+
+    // =================================================
+    // search
+    // =================================================
+
+    /**
+     * Iterator over all points in the tree, nearest first. Not thread-safe.
+     */
+    public final class Search {
+        private final double qx;
+        private final double qy;
+        private final double qz;
+
+        // binary min-heap of pending entries, keyed by squared chord distance (exact for points, lower bound for nodes).
+        // a node is the range [lo, hi) at depth; a point has (hi == -1) and lo is its position in tree order.
+        private double[] keys   = new double[64];
+        private int[]    los    = new int[64];
+        private int[]    his    = new int[64];
+        private int[]    depths = new int[64];
+        private int      count  = 0;
+
+        private double   lastKey = 0;
+
+        private Search(double latDeg, double lonDeg) {
+            double[] q = new double[3];
+            toUnitVector(latDeg, lonDeg, q, 0);
+            qx = q[0];
+            qy = q[1];
+            qz = q[2];
+
+            if (size > 0) push(0.0, 0, size, 0);
+        }
+
+        /**
+         * @return the index of the next nearest point, or -1 when all points have been returned.
+         */
+        public int next() {
+            while (count > 0) {
+                double key   = keys[0];
+                int    lo    = los[0];
+                int    hi    = his[0];
+                int    depth = depths[0];
+                pop();
+
+                if (hi < 0) {
+                    lastKey = key;
+                    return indices[lo];
+                }
+
+                if ((hi - lo) <= LEAF_SIZE) {
+                    for (int i = lo; i < hi; i++) {
+                        push(distanceSquared(i), i, -1, 0);
+                    }
+                    continue;
+                }
+
+                int    mid  = (lo + hi) >>> 1;
+                int    axis = depth % 3;
+                double diff = ((axis == 0) ? qx : (axis == 1) ? qy : qz) - xyz[(mid * 3) + axis];
+                double far  = Math.max(key, diff * diff);
+
+                push(distanceSquared(mid), mid, -1, 0);
+
+                if (diff < 0) {
+                    push(key, lo,      mid, depth + 1);
+                    push(far, mid + 1, hi,  depth + 1);
+                }
+                else {
+                    push(far, lo,      mid, depth + 1);
+                    push(key, mid + 1, hi,  depth + 1);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return great-circle distance in meters to the point most recently returned by {@link #next()}.
+         */
+        public double getDistance() {
+            double chord = Math.sqrt(lastKey);
+            if (chord > 2.0) chord = 2.0;  // rounding
+
+            return 2.0 * Geodesic.EARTH_RADIUS * Math.asin(chord * 0.5);
+        }
+
+        private double distanceSquared(int pos) {
+            int    offset = pos * 3;
+            double dx     = xyz[offset]     - qx;
+            double dy     = xyz[offset + 1] - qy;
+            double dz     = xyz[offset + 2] - qz;
+
+            return (dx * dx) + (dy * dy) + (dz * dz);
+        }
+
+        private void push(double key, int lo, int hi, int depth) {
+            if ((hi >= 0) && (hi <= lo)) return;  // empty node
+
+            if (count == keys.length) {
+                int capacity = count * 2;
+                keys   = Arrays.copyOf(keys,   capacity);
+                los    = Arrays.copyOf(los,    capacity);
+                his    = Arrays.copyOf(his,    capacity);
+                depths = Arrays.copyOf(depths, capacity);
+            }
+
+            // sift up
+            int i = count++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) break;
+                set(i, keys[parent], los[parent], his[parent], depths[parent]);
+                i = parent;
+            }
+            set(i, key, lo, hi, depth);
+        }
+
+        private void pop() {
+            count--;
+            if (count == 0) return;
+
+            double key   = keys[count];
+            int    lo    = los[count];
+            int    hi    = his[count];
+            int    depth = depths[count];
+
+            // sift down
+            int i = 0;
+            while (true) {
+                int child = (i * 2) + 1;
+                if (child >= count) break;
+                if (((child + 1) < count) && (keys[child + 1] < keys[child])) child++;
+                if (keys[child] >= key) break;
+                set(i, keys[child], los[child], his[child], depths[child]);
+                i = child;
+            }
+            set(i, key, lo, hi, depth);
+        }
+
+        private void set(int i, double key, int lo, int hi, int depth) {
+            keys[i]   = key;
+            los[i]    = lo;
+            his[i]    = hi;
+            depths[i] = depth;
+        }
+    }
+}
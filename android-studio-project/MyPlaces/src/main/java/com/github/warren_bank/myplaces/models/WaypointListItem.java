@@ -1,69 +1,121 @@
 package com.github.warren_bank.myplaces.models;
 
+import com.github.warren_bank.myplaces.caches.WaypointCache;
 import com.github.warren_bank.myplaces.parsers.AbstractParser;
 import com.github.warren_bank.myplaces.parsers.GpxParser;
 import com.github.warren_bank.myplaces.parsers.KmlParser;
 
-import com.github.warren_bank.filterablerecyclerview.FilterableListItem;
-
-import android.location.Location;
+import com.github.warren_bank.filterablerecyclerview.IdentifiableListItem;
+import com.github.warren_bank.filterablerecyclerview.SearchableListItem;
 
+import java.io.File;
+import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
 
-public class WaypointListItem implements FilterableListItem {
-    public final String lat;
-    public final String lon;
-    public final String name;
+// a lightweight view of a single waypoint in a "WaypointStore"
+public class WaypointListItem implements SearchableListItem, IdentifiableListItem {
+    public final WaypointStore store;
+    public final int           index;
 
-    protected final int nonce;
-    protected final Location location;
+    public WaypointListItem(WaypointStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
 
-    public float distance;  // meters
+    public double getLatitude() {
+        return store.getLatitude(index);
+    }
 
-    public WaypointListItem(String lat, String lon, String name, int nonce) {
-        if (name == null) name = "[undefined]";
+    public double getLongitude() {
+        return store.getLongitude(index);
+    }
 
-        this.lat      = lat;
-        this.lon      = lon;
-        this.name     = name;
-        this.nonce    = nonce;
-        this.location = new Location("MyPlaces");
+    public String getName() {
+        return store.getName(index);
+    }
 
-        this.location.setLatitude(
-            Location.convert(lat)
-        );
-        this.location.setLongitude(
-            Location.convert(lon)
-        );
+    public int getNonce() {
+        return store.getNonce(index);
+    }
 
-        this.distance = 0;
+    public float getDistance() {
+        return store.getDistance(index);
     }
 
-    public void updateDistance(Location currentPosition) {
-        distance = currentPosition.distanceTo(location);
+    // "lat,lon" in decimal degrees (without exponent notation)
+    public String getLatLon() {
+        return BigDecimal.valueOf(getLatitude()).toPlainString() + "," + BigDecimal.valueOf(getLongitude()).toPlainString();
     }
 
     @Override
     public String toString() {
-        return name;
+        return getName();
     }
 
     @Override
     public String getFilterableValue() {
-        return name;
+        return getName();
+    }
+
+    @Override
+    public String getSearchKey() {
+        return store.getSearchKey(index);
+    }
+
+    // the nonce is the unique sequence number of the waypoint in its file
+    @Override
+    public long getItemId() {
+        return getNonce();
     }
 
     public boolean equals(WaypointListItem that) {
         if (that == null) return false;
 
-        return (this.lat.equals(that.lat) && this.lon.equals(that.lon));
+        return ((this.getLatitude() == that.getLatitude()) && (this.getLongitude() == that.getLongitude()));
     }
 
     // Helper
 
-    public static List<FilterableListItem> fromFile(String filepath, String format) {
+    // waypoints are added to "store" and passed to the listener in batches, on the calling thread.
+    // when "cacheDir" contains a valid cache for the file, then the file is not parsed;
+    // otherwise, the cache is (re)built in the background after the file has been parsed.
+    // return false when the file could not be read to its end, in which case "store" only contains the waypoints before the error.
+    public static boolean fromFile(final String filepath, String format, final File cacheDir, final WaypointStore store, final AbstractParser.BatchListener listener) {
+        if ((cacheDir != null) && WaypointCache.read(cacheDir, filepath, store, listener)) {
+            store.trimToSize();
+            return true;
+        }
+
+        AbstractParser parser = getParser(filepath, format);
+        if (parser == null) return true;
+
+        // the key of the cache, before the file is read
+        File dataFile     = new File(filepath);
+        long length       = dataFile.length();
+        long lastModified = dataFile.lastModified();
+
+        final boolean[] completed = new boolean[]{ true };
+
+        boolean complete = parser.parse(store, new AbstractParser.BatchListener() {
+            @Override
+            public boolean onBatch(ArrayList<WaypointListItem> batch) {
+                if (!listener.onBatch(batch)) {
+                    completed[0] = false;
+                }
+                return completed[0];
+            }
+        });
+
+        store.trimToSize();
+
+        if ((cacheDir != null) && completed[0] && complete) {
+            WaypointCache.writeAsync(cacheDir, filepath, length, lastModified, store);
+        }
+
+        return complete;
+    }
+
+    private static AbstractParser getParser(String filepath, String format) {
         AbstractParser parser = null;
 
         switch (format) {
@@ -77,60 +129,6 @@ public class WaypointListItem implements FilterableListItem {
               break;
         }
 
-        if (parser == null) {
-            return new ArrayList<FilterableListItem>();
-        }
-        else {
-            ArrayList<WaypointListItem> waypoints = parser.parse();
-            return (List<FilterableListItem>)(List<?>) waypoints;
-        }
+        return parser;
     }
-
-    // Comparator private classes
-
-    private static class SequentialOrderComparator implements Comparator<FilterableListItem> {
-        @Override
-        public int compare(FilterableListItem x, FilterableListItem y) {
-            if ((x == null) || (y == null)) throw new NullPointerException();
-
-            WaypointListItem a = (WaypointListItem) x;
-            WaypointListItem b = (WaypointListItem) y;
-
-            if (a.nonce < b.nonce) return -1;
-            if (a.nonce > b.nonce) return 1;
-            return 0;
-        }
-    }
-
-    private static class DistanceOrderComparator implements Comparator<FilterableListItem> {
-        @Override
-        public int compare(FilterableListItem x, FilterableListItem y) {
-            if ((x == null) || (y == null)) throw new NullPointerException();
-
-            WaypointListItem a = (WaypointListItem) x;
-            WaypointListItem b = (WaypointListItem) y;
-
-            if (a.distance < b.distance) return -1;
-            if (a.distance > b.distance) return 1;
-            return 0;
-        }
-    }
-
-    private static class AlphabeticOrderComparator implements Comparator<FilterableListItem> {
-        @Override
-        public int compare(FilterableListItem x, FilterableListItem y) {
-            if ((x == null) || (y == null)) throw new NullPointerException();
-
-            WaypointListItem a = (WaypointListItem) x;
-            WaypointListItem b = (WaypointListItem) y;
-
-            return a.name.compareTo(b.name);
-        }
-    }
-
-    // Comparator static instances
-
-    public static final SequentialOrderComparator sequentialOrderComparator = new SequentialOrderComparator();
-    public static final DistanceOrderComparator   distanceOrderComparator   = new DistanceOrderComparator();
-    public static final AlphabeticOrderComparator alphabeticOrderComparator = new AlphabeticOrderComparator();
 }
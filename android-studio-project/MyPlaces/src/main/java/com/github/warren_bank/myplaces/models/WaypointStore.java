@@ -0,0 +1,369 @@
+package com.github.warren_bank.myplaces.models;
+
+import com.github.warren_bank.myplaces.helpers.CollationRanks;
+import com.github.warren_bank.myplaces.helpers.Geodesic;
+import com.github.warren_bank.myplaces.helpers.IndexSort;
+import com.github.warren_bank.myplaces.helpers.KdTree;
+
+import com.github.warren_bank.filterablerecyclerview.SearchKeys;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+// =================================================
+// primitive-backed storage for all of the waypoints in one file.
+//
+// each waypoint is identified by its index, which is the order in which it was added.
+// "WaypointListItem" is a lightweight view of a single index.
+//
+// names are stored in a table of unique values,
+// so the many points in a track that share the same name (or have no name) share a single String.
+//
+// waypoints are appended by a single (loader) thread, which publishes them after each batch (see: "publish").
+// until then, they are invisible to other threads.
+// a published view of the columns is immutable in size, and each pass over the waypoints reads a single view,
+// so its arrays always cover its count, even while the loader grows its own.
+// =================================================
+public class WaypointStore {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // only accessed by the loader thread
+    private double[] lat;        // decimal degrees
+    private double[] lon;        // decimal degrees
+    private float[]  distance;   // meters, as displayed (see: "setDistances")
+    private int[]    nonce;
+    private int[]    nameIndex;
+    private String[] names;      // unique values
+    private String[] searchKeys; // unique values, folded for search
+    private int      size;
+    private int      namesSize;
+
+    private HashMap<String, Integer> nameLookup;  // only needed while waypoints are being added
+
+    // what every other thread reads
+    private volatile Columns columns;
+
+    // precomputed for the distance kernel, on first use
+    private double[] latRad;
+    private double[] lonRad;
+    private double[] cosLat;
+    private int      precomputedSize;
+
+    // sort orders that don't depend on the current position, on first use
+    private volatile int[] sequentialOrder;
+    private volatile int[] alphabeticOrder;
+
+    // the columns as of the most recent "publish".
+    // the arrays may be shared with the loader, which only writes beyond "size" (or replaces them), until it publishes again.
+    private static final class Columns {
+        final double[] lat;
+        final double[] lon;
+        final float[]  distance;
+        final int[]    nonce;
+        final int[]    nameIndex;
+        final String[] names;
+        final String[] searchKeys;
+        final int      size;
+        final int      namesSize;
+
+        Columns(double[] lat, double[] lon, float[] distance, int[] nonce, int[] nameIndex, String[] names, String[] searchKeys, int size, int namesSize) {
+            this.lat        = lat;
+            this.lon        = lon;
+            this.distance   = distance;
+            this.nonce      = nonce;
+            this.nameIndex  = nameIndex;
+            this.names      = names;
+            this.searchKeys = searchKeys;
+            this.size       = size;
+            this.namesSize  = namesSize;
+        }
+    }
+
+    public WaypointStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public WaypointStore(int capacity) {
+        if (capacity < 1) capacity = 1;
+
+        lat        = new double[capacity];
+        lon        = new double[capacity];
+        distance   = new float[capacity];
+        nonce      = new int[capacity];
+        nameIndex  = new int[capacity];
+        names      = new String[16];
+        searchKeys = new String[16];
+        size       = 0;
+        namesSize  = 0;
+        nameLookup = new HashMap<String, Integer>();
+
+        publish();
+    }
+
+    // to be called by the loader after a batch of waypoints has been added, before their indices are passed to another thread
+    public void publish() {
+        columns = new Columns(lat, lon, distance, nonce, nameIndex, names, searchKeys, size, namesSize);
+    }
+
+    // return the index of the new waypoint
+    public int add(double latitude, double longitude, String name, int sequence) {
+        if (size == lat.length) {
+            grow(size + 1);
+        }
+
+        lat[size]       = latitude;
+        lon[size]       = longitude;
+        distance[size]  = 0;
+        nonce[size]     = sequence;
+        nameIndex[size] = addName(name);
+
+        return size++;
+    }
+
+    // bulk load of columns that are already in the packed format (ex: read from a binary cache) into an empty store.
+    // the store takes ownership of the arrays, so they are not copied, and must not be used by the caller afterwards.
+    // the new waypoints are published.
+    public void adopt(double[] latitudes, double[] longitudes, int[] sequences, int[] nameIndices, String[] uniqueNames) {
+        if (size != 0) throw new IllegalStateException("store is not empty");
+
+        int count = latitudes.length;
+
+        int[]   remap  = new int[uniqueNames.length];
+        boolean mapped = false;
+        for (int i=0; i < uniqueNames.length; i++) {
+            remap[i] = addName(uniqueNames[i]);
+            mapped  |= (remap[i] != i);  // only when the table contains duplicates
+        }
+        if (mapped) {
+            for (int i=0; i < count; i++) {
+                nameIndices[i] = remap[nameIndices[i]];
+            }
+        }
+
+        lat       = latitudes;
+        lon       = longitudes;
+        distance  = new float[count];
+        nonce     = sequences;
+        nameIndex = nameIndices;
+        size      = count;
+
+        publish();
+    }
+
+    // to be called after all waypoints have been added.
+    // distances must not be written until it returns.
+    public void trimToSize() {
+        nameLookup = null;
+
+        if (size < lat.length) {
+            int capacity = Math.max(size, 1);
+
+            lat       = Arrays.copyOf(lat,       capacity);
+            lon       = Arrays.copyOf(lon,       capacity);
+            distance  = Arrays.copyOf(distance,  capacity);
+            nonce     = Arrays.copyOf(nonce,     capacity);
+            nameIndex = Arrays.copyOf(nameIndex, capacity);
+        }
+        if (namesSize < names.length) {
+            names      = Arrays.copyOf(names,      namesSize);
+            searchKeys = Arrays.copyOf(searchKeys, namesSize);
+        }
+        publish();
+    }
+
+    // the number of published waypoints
+    public int size() {
+        return columns.size;
+    }
+
+    public double getLatitude(int index) {
+        return columns.lat[index];
+    }
+
+    public double getLongitude(int index) {
+        return columns.lon[index];
+    }
+
+    // meters from the position of the ordering by distance that is displayed
+    public float getDistance(int index) {
+        return columns.distance[index];
+    }
+
+    // to be called on the UI thread when an ordering by distance is displayed.
+    // "meters[i]" is the distance to the waypoint with store index "indices[i]".
+    // an ordering calculates its distances into an array of its own, so the displayed distances only change here.
+    public void setDistances(int[] indices, float[] meters) {
+        float[] distance = columns.distance;
+
+        for (int i=0; i < indices.length; i++) {
+            distance[indices[i]] = meters[i];
+        }
+    }
+
+    public int getNonce(int index) {
+        return columns.nonce[index];
+    }
+
+    public String getName(int index) {
+        Columns c = columns;
+        return c.names[c.nameIndex[index]];
+    }
+
+    // lowercase, without accents
+    public String getSearchKey(int index) {
+        Columns c = columns;
+        return c.searchKeys[c.nameIndex[index]];
+    }
+
+    public int getNameIndex(int index) {
+        return columns.nameIndex[index];
+    }
+
+    public int getUniqueNameCount() {
+        return columns.namesSize;
+    }
+
+    public String getUniqueName(int nameIndex) {
+        return columns.names[nameIndex];
+    }
+
+    // calculate the distance from a position (in decimal degrees) to every waypoint in the range [start, end),
+    // into distance[start, end)
+    public void updateDistance(Geodesic.Mode mode, double fromLat, double fromLon, int start, int end, float[] distance) {
+        precompute();
+
+        Geodesic.distances(mode, fromLat, fromLon, latRad, lonRad, cosLat, start, end, distance);
+    }
+
+    // "order" holds store indices.
+    // calculate the distance from a position (in decimal degrees) to the waypoints in order[lo, hi), into "distance" by store index
+    public void updateDistance(Geodesic.Mode mode, double fromLat, double fromLon, int[] order, int lo, int hi, float[] distance) {
+        precompute();
+
+        double lat0 = fromLat * (Math.PI / 180.0);
+        double lon0 = fromLon * (Math.PI / 180.0);
+        double cos0 = Math.cos(lat0);
+
+        for (int i=lo; i < hi; i++) {
+            int idx = order[i];
+
+            distance[idx] = (float) ((mode == Geodesic.Mode.EQUIRECTANGULAR)
+                ? Geodesic.equirectangular(lat0, lon0, cos0, latRad[idx], lonRad[idx], cosLat[idx])
+                : Geodesic.haversine(lat0, lon0, cos0, latRad[idx], lonRad[idx], cosLat[idx]));
+        }
+    }
+
+
+    // =================================================
+    // permutations of all store indices.
+    // ties keep the order in which waypoints were added.
+    //
+    // the sequential and alphabetic orders are computed once, then shared:
+    // callers must not modify the returned arrays.
+    // =================================================
+
+    // the order in which waypoints occur in the file
+    public int[] getSequentialOrder() {
+        Columns c   = columns;
+        int[] order = sequentialOrder;
+
+        if ((order == null) || (order.length != c.size)) {
+            order = identity(c.size);
+            IndexSort.sort(order, c.nonce, 0, c.size);
+            sequentialOrder = order;
+        }
+        return order;
+    }
+
+    public int[] getAlphabeticOrder() {
+        Columns c   = columns;
+        int[] order = alphabeticOrder;
+
+        if ((order == null) || (order.length != c.size)) {
+            order = sortAlphabetic(c);
+            alphabeticOrder = order;
+        }
+        return order;
+    }
+
+    // a new permutation on every call, since the displayed distances change with the current position
+    public int[] getDistanceOrder() {
+        Columns c   = columns;
+        int[] order = identity(c.size);
+        IndexSort.sort(order, c.distance, 0, c.size);
+        return order;
+    }
+
+    private static int[] sortAlphabetic(Columns c) {
+        // rank the unique names in locale-correct order, then sort waypoints by the rank of their name
+        int[] rank = CollationRanks.rank(c.names, c.namesSize);
+
+        int[] keys = new int[c.size];
+        for (int i=0; i < c.size; i++) {
+            keys[i] = rank[c.nameIndex[i]];
+        }
+
+        int[] order = identity(c.size);
+        IndexSort.sort(order, keys, 0, c.size);
+        return order;
+    }
+
+    private static int[] identity(int size) {
+        int[] order = new int[size];
+        for (int i=0; i < size; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    // to be called after all waypoints have been added
+    public KdTree createSpatialIndex() {
+        Columns c = columns;
+        return new KdTree(c.lat, c.lon, c.size);
+    }
+
+    // return the columns that the precomputed values cover
+    private synchronized Columns precompute() {
+        Columns c = columns;
+        int size  = c.size;
+
+        if (precomputedSize == size) return c;
+
+        if ((latRad == null) || (latRad.length < size)) {
+            latRad = (latRad == null) ? new double[size] : Arrays.copyOf(latRad, size);
+            lonRad = (lonRad == null) ? new double[size] : Arrays.copyOf(lonRad, size);
+            cosLat = (cosLat == null) ? new double[size] : Arrays.copyOf(cosLat, size);
+        }
+
+        Geodesic.precompute(c.lat, c.lon, precomputedSize, size, latRad, lonRad, cosLat);
+        precomputedSize = size;
+        return c;
+    }
+
+    private int addName(String name) {
+        if (name == null) name = "[undefined]";
+
+        Integer index = nameLookup.get(name);
+        if (index == null) {
+            if (namesSize == names.length) {
+                names      = Arrays.copyOf(names,      namesSize * 2);
+                searchKeys = Arrays.copyOf(searchKeys, namesSize * 2);
+            }
+            index = namesSize;
+            searchKeys[namesSize] = SearchKeys.fold(name);  // once per unique name
+            names[namesSize++]    = name;
+            nameLookup.put(name, index);
+        }
+        return index;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, lat.length + (lat.length >> 1));
+
+        lat       = Arrays.copyOf(lat,       capacity);
+        lon       = Arrays.copyOf(lon,       capacity);
+        distance  = Arrays.copyOf(distance,  capacity);
+        nonce     = Arrays.copyOf(nonce,     capacity);
+        nameIndex = Arrays.copyOf(nameIndex, capacity);
+    }
+}
@@ -1,42 +1,115 @@
 package com.github.warren_bank.myplaces.parsers;
 
 import com.github.warren_bank.myplaces.models.WaypointListItem;
+import com.github.warren_bank.myplaces.models.WaypointStore;
 
     // =====================================================
-    // JOOX api:
-    //     https://www.jooq.org/products/jOOX/javadoc/current/allclasses-noframe.html
-    //
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/JOOX.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Match.html
+    // XmlPullParser api:
+    //     https://developer.android.com/reference/org/xmlpull/v1/XmlPullParser
     // =====================================================
-import org.joox.JOOX;
-import org.joox.Match;
+import android.util.Xml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.util.ArrayList;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-
-import org.xml.sax.SAXException;
+import java.io.InputStream;
 
 public abstract class AbstractParser {
-    private File  xmlFile;
-    private Match xmlRoot;
+    private File                        xmlFile;
+    private WaypointStore               store;
+    private BatchListener               listener;
+    private ArrayList<WaypointListItem> batch;
+
+    private static final int BUFFER_SIZE = 64 * 1024;  // 64 KB
+
+    public static final int BATCH_SIZE = 1000;        // number of waypoints passed to the listener at a time
+
+    // called on the parsing thread. a new list is passed to each call, so it can be handed off to another thread.
+    // return false to stop parsing.
+    public interface BatchListener {
+        boolean onBatch(ArrayList<WaypointListItem> batch);
+    }
 
     public AbstractParser(String filepath) {
         xmlFile = new File(filepath);
+    }
+
+    // return false when the file could not be read to its end (ex: truncated or malformed XML).
+    // the points that were read before the error have already been added to "store" and passed to the listener,
+    // so the caller is responsible for presenting them as a partial result.
+    public boolean parse(WaypointStore store, BatchListener listener) {
+        this.store    = store;
+        this.listener = listener;
+        this.batch    = new ArrayList<WaypointListItem>(BATCH_SIZE);
 
+        boolean complete = true;
+
+        InputStream in = null;
         try {
-            getXmlRoot();
+            in = openInputStream();
+            XmlPullParser xpp = getXmlPullParser(in);
+
+            if (!parse(xpp)) return true;  // stopped by the listener
         }
-        catch (Exception e){}
+        catch(Exception e) {
+            // keep the points that were read before the error
+            complete = false;
+        }
+        finally {
+            closeQuietly(in);
+        }
+
+        flush();
+        return complete;
     }
 
-    public abstract ArrayList<WaypointListItem> parse();
+    // return false when parsing was stopped by the listener
+    protected abstract boolean parse(XmlPullParser xpp) throws XmlPullParserException, IOException;
+
+    // return false when parsing should stop
+    protected boolean addWaypoint(double lat, double lon, String name, int nonce) {
+        int index = store.add(lat, lon, name, nonce);
+        batch.add(new WaypointListItem(store, index));
 
-    protected Match getXmlRoot() throws SAXException, IOException {
-        if (xmlRoot == null) {
-            xmlRoot = JOOX.$(xmlFile);
+        return (batch.size() < BATCH_SIZE) || flush();
+    }
+
+    private boolean flush() {
+        if (batch.isEmpty()) return true;
+
+        ArrayList<WaypointListItem> full = batch;
+        batch = new ArrayList<WaypointListItem>(BATCH_SIZE);
+
+        store.publish();  // before the listener hands the batch to another thread
+
+        return listener.onBatch(full);
+    }
+
+    // streaming: the file is read in a single forward pass with constant memory.
+    // namespace processing is enabled, so "getName()" returns the local tag name without any prefix.
+    // the caller is responsible for closing the InputStream.
+    protected XmlPullParser getXmlPullParser(InputStream in) throws XmlPullParserException {
+        XmlPullParser xpp = Xml.newPullParser();
+        xpp.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        xpp.setInput(in, null);  // detect encoding from the XML declaration
+        return xpp;
+    }
+
+    protected InputStream openInputStream() throws IOException {
+        return new BufferedInputStream(new FileInputStream(xmlFile), BUFFER_SIZE);
+    }
+
+    protected static void closeQuietly(InputStream in) {
+        if (in == null) return;
+
+        try {
+            in.close();
         }
-        return xmlRoot;
+        catch (Exception e){}
     }
 }
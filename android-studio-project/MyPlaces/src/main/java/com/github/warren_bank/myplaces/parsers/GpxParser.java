@@ -1,69 +1,41 @@
 package com.github.warren_bank.myplaces.parsers;
 
+import com.github.warren_bank.myplaces.helpers.CoordinateParser;
 import com.github.warren_bank.myplaces.models.WaypointListItem;
 
     // =====================================================
-    // JOOX api:
-    //     https://www.jooq.org/products/jOOX/javadoc/current/allclasses-noframe.html
-    //
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/JOOX.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Match.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Each.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Context.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Filter.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/FastFilter.html
-    //
-    //     https://docs.oracle.com/javase/8/docs/api/org/w3c/dom/Element.html
+    // XmlPullParser api:
+    //     https://developer.android.com/reference/org/xmlpull/v1/XmlPullParser
     // =====================================================
-import org.joox.JOOX;
-import org.joox.Match;
-import org.joox.Each;
-import org.joox.Context;
-import org.joox.Filter;
-import org.joox.FastFilter;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
-import org.w3c.dom.Element;
-
-import java.util.ArrayList;
+import java.io.IOException;
 
 public class GpxParser extends AbstractParser {
     protected int nonce;
 
-    private static final FastFilter is_wpt   = JOOX.tag("wpt",   true);
-    private static final FastFilter is_rtept = JOOX.tag("rtept", true);
-    private static final FastFilter is_trkpt = JOOX.tag("trkpt", true);
-
-    private static final FastFilter is_name  = JOOX.tag("name",  true);
-    private static final FastFilter is_desc  = JOOX.tag("desc",  true);
-
-    private static final Filter is_point_tag = new Filter() {
-        @Override
-        public boolean filter(Context context) {
-            return (
-                is_wpt.filter(  context) ||
-                is_rtept.filter(context) ||
-                is_trkpt.filter(context)
-            );
-        }
-    };
-
-    private static final Filter is_name_tag  = new Filter() {
-        @Override
-        public boolean filter(Context context) {
-            return (
-                is_name.filter(context) ||
-                is_desc.filter(context)
-            );
-        }
-    };
-
     public GpxParser(String filepath) {
         super(filepath);
     }
 
+    private static boolean is_point_tag(String tag) {
+        return (
+            "wpt".equals(tag)   ||
+            "rtept".equals(tag) ||
+            "trkpt".equals(tag)
+        );
+    }
+
+    private static boolean is_name_tag(String tag) {
+        return (
+            "name".equals(tag) ||
+            "desc".equals(tag)
+        );
+    }
+
     @Override
-    public ArrayList<WaypointListItem> parse() {
-        ArrayList<WaypointListItem> arrayList = new ArrayList<WaypointListItem>();
+    protected boolean parse(XmlPullParser xpp) throws XmlPullParserException, IOException {
         this.nonce = 0;
 
         // =================================================
@@ -71,39 +43,67 @@ public class GpxParser extends AbstractParser {
         //     https://www.topografix.com/gpx_manual.asp
         // =================================================
 
-        Match points;
-        try {
-            points = getXmlRoot().find(is_point_tag);
-        }
-        catch(Exception e) {
-            return arrayList;
-        }
-
         // =================================================
         // required attributes: "lat", "lon"
         // optional child nodes: <name>, <desc>
         // =================================================
 
-        points.each(new Each(){
-            @Override
-            public void each(Context context) {
-                Element el = context.element();
-
-                String lat = el.getAttribute("lat").trim();
-                String lon = el.getAttribute("lon").trim();
-                if ((lat == "") || (lon == "")) return;
+        String lat        = null;
+        String lon        = null;
+        String name       = null;
+        int    pointDepth = -1;  // depth of the open point tag, or -1 when outside of any point
+        int    nameDepth  = -1;  // depth of the open name tag, or -1 when not collecting text
+        StringBuilder text = new StringBuilder();
+
+        for (int event = xpp.getEventType(); event != XmlPullParser.END_DOCUMENT; event = xpp.next()) {
+            switch (event) {
+                case XmlPullParser.START_TAG: {
+                    String tag = xpp.getName();
+
+                    if (pointDepth < 0) {
+                        if (is_point_tag(tag)) {
+                            pointDepth = xpp.getDepth();
+                            lat        = xpp.getAttributeValue(null, "lat");
+                            lon        = xpp.getAttributeValue(null, "lon");
+                            name       = null;
+                        }
+                    }
+                    else if ((name == null) && (nameDepth < 0) && is_name_tag(tag)) {
+                        // first value
+                        nameDepth = xpp.getDepth();
+                        text.setLength(0);
+                    }
+                    break;
+                }
 
-                String name = JOOX.$(el).find(is_name_tag).text();  // first value, or null if not found
-                if (name != null) {
-                    name = name.trim();
+                case XmlPullParser.TEXT: {
+                    if (nameDepth >= 0) {
+                        text.append(xpp.getText());
+                    }
+                    break;
                 }
 
-                arrayList.add(
-                    new WaypointListItem(lat, lon, name, GpxParser.this.nonce++)
-                );
+                case XmlPullParser.END_TAG: {
+                    int depth = xpp.getDepth();
+
+                    if (depth == nameDepth) {
+                        name      = text.toString().trim();
+                        nameDepth = -1;
+                    }
+                    else if (depth == pointDepth) {
+                        pointDepth = -1;
+
+                        double latitude  = CoordinateParser.parse(lat);
+                        double longitude = CoordinateParser.parse(lon);
+                        if (Double.isNaN(latitude) || Double.isNaN(longitude)) break;
+
+                        if (!addWaypoint(latitude, longitude, name, nonce++)) return false;
+                    }
+                    break;
+                }
             }
-        });
+        }
 
-        return arrayList;
+        return true;
     }
 }
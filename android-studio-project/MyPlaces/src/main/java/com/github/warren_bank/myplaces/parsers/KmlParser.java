@@ -1,54 +1,37 @@
 package com.github.warren_bank.myplaces.parsers;
 
+import com.github.warren_bank.myplaces.helpers.CoordinateParser;
 import com.github.warren_bank.myplaces.models.WaypointListItem;
 
     // =====================================================
-    // JOOX api:
-    //     https://www.jooq.org/products/jOOX/javadoc/current/allclasses-noframe.html
-    //
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/JOOX.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Match.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Each.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Context.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/Filter.html
-    //     https://www.jooq.org/products/jOOX/javadoc/current/org/joox/FastFilter.html
-    //
-    //     https://docs.oracle.com/javase/8/docs/api/org/w3c/dom/Element.html
+    // XmlPullParser api:
+    //     https://developer.android.com/reference/org/xmlpull/v1/XmlPullParser
     // =====================================================
-import org.joox.JOOX;
-import org.joox.Match;
-import org.joox.Each;
-import org.joox.Context;
-import org.joox.Filter;
-import org.joox.FastFilter;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
-import org.w3c.dom.Element;
-
-import java.util.ArrayList;
+import java.io.IOException;
 
 public class KmlParser extends AbstractParser {
     protected int nonce;
 
-    private static final FastFilter is_name  = JOOX.tag("name",         true);
-    private static final FastFilter is_desc  = JOOX.tag("description",  true);
-
-    private static final Filter is_name_tag  = new Filter() {
-        @Override
-        public boolean filter(Context context) {
-            return (
-                is_name.filter(context) ||
-                is_desc.filter(context)
-            );
-        }
-    };
+    // only the first "lon,lat,altitude" tuple is needed,
+    // so the text of very long <coordinates> (ex: LineString) is truncated
+    private static final int MAX_COORDINATES_LENGTH = 1024;
 
     public KmlParser(String filepath) {
         super(filepath);
     }
 
+    private static boolean is_name_tag(String tag) {
+        return (
+            "name".equals(tag) ||
+            "description".equals(tag)
+        );
+    }
+
     @Override
-    public ArrayList<WaypointListItem> parse() {
-        ArrayList<WaypointListItem> arrayList = new ArrayList<WaypointListItem>();
+    protected boolean parse(XmlPullParser xpp) throws XmlPullParserException, IOException {
         this.nonce = 0;
 
         // =================================================
@@ -56,44 +39,132 @@ public class KmlParser extends AbstractParser {
         //     http://dagik.org/kml_intro/E/point.html
         // =================================================
 
-        Match points;
-        try {
-            points = getXmlRoot().find("Placemark");
-        }
-        catch(Exception e) {
-            return arrayList;
-        }
-
         // =================================================
         // required child nodes: <Point><coordinates>lon,lat,altitude</coordinates></Point>
         // optional child nodes: <name>, <description>
         // =================================================
 
-        points.each(new Each(){
-            @Override
-            public void each(Context context) {
-                Match el = JOOX.$(context.element());
+        String  name            = null;
+        boolean hasCoords       = false;
+        int     placemarkDepth  = -1;  // depth of the open <Placemark>, or -1 when outside of any placemark
+        int     nameDepth       = -1;  // depth of the open name tag, or -1 when not collecting text
+        int     coordsDepth     = -1;  // depth of the open <coordinates>, or -1 when not collecting text
+        StringBuilder text      = new StringBuilder();
+        StringBuilder coords    = new StringBuilder();
+        int[] bounds            = new int[4];
+        int[] holder            = new int[2];
+
+        for (int event = xpp.getEventType(); event != XmlPullParser.END_DOCUMENT; event = xpp.next()) {
+            switch (event) {
+                case XmlPullParser.START_TAG: {
+                    String tag = xpp.getName();
+
+                    if (placemarkDepth < 0) {
+                        if ("Placemark".equals(tag)) {
+                            placemarkDepth = xpp.getDepth();
+                            name           = null;
+                            hasCoords      = false;
+                        }
+                    }
+                    else if ((nameDepth < 0) && (coordsDepth < 0)) {
+                        if ((name == null) && is_name_tag(tag)) {
+                            // first value
+                            nameDepth = xpp.getDepth();
+                            text.setLength(0);
+                        }
+                        else if (!hasCoords && "coordinates".equals(tag)) {
+                            // first value
+                            coordsDepth = xpp.getDepth();
+                            coords.setLength(0);
+                        }
+                    }
+                    break;
+                }
 
-                String name = el.find(is_name_tag).text();         // first value, or null if not found
-                if (name != null) {
-                    name = name.trim();
+                case XmlPullParser.TEXT: {
+                    if (nameDepth >= 0) {
+                        text.append(xpp.getText());
+                    }
+                    else if ((coordsDepth >= 0) && (coords.length() < MAX_COORDINATES_LENGTH)) {
+                        // read directly from the parser's buffer
+                        char[] chars = xpp.getTextCharacters(holder);
+                        appendCoordinates(coords, chars, holder[0], holder[1]);
+                    }
+                    break;
                 }
 
-                String strCoords = el.find("coordinates").text();  // CSV, or null if not found
-                if (strCoords == null) return;
+                case XmlPullParser.END_TAG: {
+                    int depth = xpp.getDepth();
+
+                    if (depth == nameDepth) {
+                        name      = text.toString().trim();
+                        nameDepth = -1;
+                    }
+                    else if (depth == coordsDepth) {
+                        hasCoords   = true;
+                        coordsDepth = -1;
+                    }
+                    else if (depth == placemarkDepth) {
+                        placemarkDepth = -1;
+
+                        if (!hasCoords) break;
+                        if (!tokenizeCoordinates(coords, bounds)) break;
+
+                        double longitude = CoordinateParser.parse(coords, bounds[0], bounds[1]);
+                        double latitude  = CoordinateParser.parse(coords, bounds[2], bounds[3]);
+                        if (Double.isNaN(latitude) || Double.isNaN(longitude)) break;
+
+                        if (!addWaypoint(latitude, longitude, name, nonce++)) return false;
+                    }
+                    break;
+                }
+            }
+        }
 
-                String[] arrCoords = strCoords.trim().split("\\s*,\\s*");
-                if (arrCoords.length < 2) return;
+        return true;
+    }
 
-                String lon = arrCoords[0];
-                String lat = arrCoords[1];
+    // leading whitespace is dropped, so the length limit only applies to meaningful text
+    private static void appendCoordinates(StringBuilder coords, char[] chunk, int start, int length) {
+        if (chunk == null) return;
 
-                arrayList.add(
-                    new WaypointListItem(lat, lon, name, KmlParser.this.nonce++)
-                );
-            }
-        });
+        int end = start + length;
+
+        if (coords.length() == 0) {
+            while ((start < end) && Character.isWhitespace(chunk[start])) start++;
+        }
+        if ((end - start) > (MAX_COORDINATES_LENGTH - coords.length())) {
+            end = start + (MAX_COORDINATES_LENGTH - coords.length());
+        }
+
+        coords.append(chunk, start, end - start);
+    }
 
-        return arrayList;
+    // =================================================
+    // scans the first "lon,lat[,altitude]" tuple without allocating:
+    //   * whitespace is allowed around each comma
+    //   * tuples are separated by whitespace
+    // on success, bounds = {lon_start, lon_end, lat_start, lat_end}
+    // =================================================
+    protected static boolean tokenizeCoordinates(CharSequence chars, int[] bounds) {
+        int length = chars.length();
+        int i      = 0;
+
+        // lon
+        while ((i < length) && Character.isWhitespace(chars.charAt(i))) i++;
+        bounds[0] = i;
+        while ((i < length) && (chars.charAt(i) != ',') && !Character.isWhitespace(chars.charAt(i))) i++;
+        bounds[1] = i;
+        while ((i < length) && Character.isWhitespace(chars.charAt(i))) i++;
+        if ((i >= length) || (chars.charAt(i) != ',')) return false;
+        i++;
+
+        // lat
+        while ((i < length) && Character.isWhitespace(chars.charAt(i))) i++;
+        bounds[2] = i;
+        while ((i < length) && (chars.charAt(i) != ',') && !Character.isWhitespace(chars.charAt(i))) i++;
+        bounds[3] = i;
+
+        return ((bounds[1] > bounds[0]) && (bounds[3] > bounds[2]));
     }
 }
@@ -0,0 +1,232 @@
+package com.github.warren_bank.myplaces.services;
+
+import com.github.warren_bank.myplaces.helpers.KdTree;
+import com.github.warren_bank.myplaces.models.WaypointStore;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// =================================================
+// orders places by distance on a single background thread.
+//
+// positions are "latest wins":
+//   * a position that arrives while an earlier one is still waiting to start replaces it (counted as coalesced)
+//   * a position that arrives while an earlier one is being processed stops that work at its next check (counted as dropped)
+// so at most one ordering is being computed at a time, and always for the most recent position.
+//
+// a position that is too close to the one the current ordering is for to change the order of the visible places
+// is skipped (counted as skipped), and the current ordering is kept (see: "DistanceOrdering.getMinGap").
+// a position that is a short move from it repairs the current ordering (counted as repaired), instead of building a new one
+// (see: "DistanceOrdering.repair").
+//
+// extensions and snapshots of an ordering run on the same thread, after any work that was already queued.
+// every result is a copy of the sorted prefix of the ordering, and is passed to the listener on the UI thread.
+// =================================================
+public class DistanceEngine {
+
+    public interface Listener {
+        // on the UI thread. "snapshot" is the sorted prefix of the ordering (see: "DistanceOrdering.snapshot"),
+        // or null when nothing changed, or the work was superseded.
+        void onOrder(DistanceOrdering source, DistanceOrdering.Snapshot snapshot);
+    }
+
+    private final WaypointStore   store;
+    private final ExecutorService executor;
+    private Handler               handler;  // created on the worker thread, when the first result is posted
+    private final Object          lock;
+
+    private volatile int              latestFix;  // incremented for each position
+    private volatile DistanceOrdering ordering;   // for the most recent position that was processed completely, and published
+
+    private PendingFix                pendingFix; // guarded by "lock"
+    private int                       coalescedCount;
+    private volatile int              droppedCount;
+    private volatile int              skippedCount;
+    private volatile int              repairedCount;
+
+    private static class PendingFix {
+        final int      fix;
+        final double   lat;
+        final double   lon;
+        final KdTree   index;
+        final int      count;
+        final int      visibleCount;
+        final Listener listener;
+
+        PendingFix(int fix, double lat, double lon, KdTree index, int count, int visibleCount, Listener listener) {
+            this.fix          = fix;
+            this.lat          = lat;
+            this.lon          = lon;
+            this.index        = index;
+            this.count        = count;
+            this.visibleCount = visibleCount;
+            this.listener     = listener;
+        }
+    }
+
+    public DistanceEngine(WaypointStore store) {
+        this.store    = store;
+        this.lock     = new Object();
+        this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "DistanceEngine");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // To be called on the UI thread for each new position.
+    // The places are ordered by distance from the position, and the nearest "count" places are sorted.
+    // "index" is the spatial index (or null).
+    // "visibleCount" is the number of positions at the top of the ordering that are displayed.
+    public void submit(double lat, double lon, KdTree index, int count, int visibleCount, Listener listener) {
+        synchronized (lock) {
+            boolean is_scheduled = (pendingFix != null);
+
+            if (is_scheduled) coalescedCount++;
+            latestFix++;  // superseded work stops at its next check
+            pendingFix = new PendingFix(latestFix, lat, lon, index, count, visibleCount, listener);
+
+            if (!is_scheduled) execute(runPendingFix);
+        }
+    }
+
+    // sort the first "count" places of an ordering
+    public void extend(final DistanceOrdering source, final int count, final Listener listener) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                DistanceOrdering.Snapshot snapshot = isSuperseded(source.getFix()) ? null : source.extend(count);
+                post(listener, source, snapshot);
+            }
+        });
+    }
+
+    // a copy of the sorted prefix of an ordering
+    public void snapshot(final DistanceOrdering source, final Listener listener) {
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                post(listener, source, source.snapshot());
+            }
+        });
+    }
+
+    // the ordering for the most recent position that was processed completely and published, or null
+    public DistanceOrdering getOrdering() {
+        return ordering;
+    }
+
+    // true when a more recent position was submitted
+    boolean isSuperseded(int fix) {
+        return (fix != latestFix);
+    }
+
+    // number of positions that were replaced by a more recent one before their work started
+    public int getCoalescedCount() {
+        synchronized (lock) {
+            return coalescedCount;
+        }
+    }
+
+    // number of positions whose work was stopped before it finished, because a more recent one was submitted
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    // number of positions that couldn't change the order of the visible places, so the current ordering was kept
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    // number of positions that were ordered by repairing the current ordering
+    public int getRepairedCount() {
+        return repairedCount;
+    }
+
+    // to be called when the engine is no longer needed. queued work is discarded.
+    public void shutdown() {
+        synchronized (lock) {
+            latestFix++;
+            pendingFix = null;
+        }
+        executor.shutdownNow();
+    }
+
+    // on the worker thread
+    private final Runnable runPendingFix = new Runnable() {
+        @Override
+        public void run() {
+            PendingFix next;
+
+            synchronized (lock) {
+                next       = pendingFix;
+                pendingFix = null;
+            }
+            if (next == null) return;
+
+            DistanceOrdering current = ordering;
+            if ((current != null) && (current.size() == store.size())) {
+                if (current.canSkip(next.lat, next.lon, next.visibleCount)) {
+                    skippedCount++;  // only written by this thread
+                    current.setVisibleGap(current.getMinGap(next.visibleCount));
+                    post(next.listener, current, null);
+                    return;
+                }
+
+                if (current.canRepair(next.index, next.lat, next.lon, next.count)) {
+                    DistanceOrdering.Snapshot snapshot = current.repair(next.fix, next.lat, next.lon, next.count);
+
+                    if (snapshot != null) {
+                        repairedCount++;  // only written by this thread
+                        current.setVisibleGap(current.getMinGap(next.visibleCount));
+                    }
+                    else {
+                        droppedCount++;
+                    }
+                    post(next.listener, current, snapshot);
+                    return;
+                }
+            }
+
+            // a candidate is only kept when it is published, so a later position is never compared to one that wasn't displayed
+            DistanceOrdering candidate = new DistanceOrdering(DistanceEngine.this, next.fix, store, next.lat, next.lon, next.index);
+            DistanceOrdering.Snapshot snapshot = null;
+
+            if (candidate.initialize(next.count) && !isSuperseded(next.fix)) {
+                candidate.setVisibleGap(candidate.getMinGap(next.visibleCount));
+
+                ordering = candidate;
+                snapshot = candidate.snapshot();
+            }
+            else {
+                droppedCount++;  // only written by this thread
+            }
+
+            post(next.listener, candidate, snapshot);
+        }
+    };
+
+    private void execute(Runnable task) {
+        if (executor.isShutdown()) return;
+
+        executor.execute(task);
+    }
+
+    private void post(final Listener listener, final DistanceOrdering source, final DistanceOrdering.Snapshot snapshot) {
+        if (handler == null) handler = new Handler(Looper.getMainLooper());
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onOrder(source, snapshot);
+            }
+        });
+    }
+}
@@ -0,0 +1,339 @@
+package com.github.warren_bank.myplaces.services;
+
+import com.github.warren_bank.myplaces.helpers.Geodesic;
+import com.github.warren_bank.myplaces.helpers.IndexSort;
+import com.github.warren_bank.myplaces.helpers.KdTree;
+import com.github.warren_bank.myplaces.models.WaypointStore;
+
+import java.util.Arrays;
+
+// =================================================
+// ordering of the adapter's items by distance from one position.
+//
+// the adapter holds the places in the order they were loaded, so the position of each place is also its store index.
+// the ordering is a permutation of store indices.
+//
+// only a prefix of the permutation is kept in sorted order, and it is extended on demand.
+// the order of the remainder is unspecified, so only the sorted prefix is published (see: "snapshot"),
+// and the adapter displays the other places in their natural order.
+//
+// each ordering calculates its distances into an array of its own.
+// so an ordering that is superseded (or never published) can't change the distances that another one compares,
+// and the distances that are displayed only change when a snapshot is published (see: "WaypointStore.setDistances").
+//
+// with the spatial index:
+//   places are returned nearest first, so each additional place costs O(log n).
+//   the distance to a place is only calculated when it joins the sorted prefix.
+// without the spatial index:
+//   all distances are calculated once, then each extension partially orders the remainder (quickselect)
+//   and only sorts the places that join the sorted prefix.
+//
+// after a short move, the ordering is repaired for the new position instead of being built again (see: "repair").
+//
+// all changes are made on the worker thread of a "DistanceEngine".
+// long loops stop early when the position they were started for is superseded (see: "DistanceEngine.isSuperseded").
+// =================================================
+public class DistanceOrdering {
+    private static final int CHUNK_SIZE = 65536;  // number of places between checks for a superseded position
+
+    private final DistanceEngine engine;
+    private final WaypointStore  store;
+    private final int[]          order;     // position in the ordering -> store index
+    private final int[]          position;  // store index -> position in the ordering
+    private final float[]        distance;  // store index -> meters from (fromLat, fromLon), for the places that were measured
+    private final KdTree         index;     // null without the spatial index
+
+    // changed by "repair"
+    private int                  fix;       // the position that this ordering is for
+    private double               fromLat;
+    private double               fromLon;
+    private KdTree.Search        search;    // null without the spatial index
+    private float                floor;     // no place in the unsorted remainder is nearer than this
+    private boolean              stale;     // without the spatial index: the distances of the remainder are from an earlier position
+
+    private volatile int         sortedCount;
+    private volatile float       visibleGap;  // see: "getMinGap"
+
+    // the sorted prefix of an ordering, as it was published. never changed.
+    public static final class Snapshot {
+        public final int[]   order;     // store indices, nearest first
+        public final float[] distance;  // meters, for each place in "order"
+
+        Snapshot(int[] order, float[] distance) {
+            this.order    = order;
+            this.distance = distance;
+        }
+    }
+
+    // to be constructed on the worker thread
+    DistanceOrdering(DistanceEngine engine, int fix, WaypointStore store, double fromLat, double fromLon, KdTree index) {
+        int size = store.size();
+
+        this.engine   = engine;
+        this.fix      = fix;
+        this.store    = store;
+        this.fromLat  = fromLat;
+        this.fromLon  = fromLon;
+        this.order    = new int[size];
+        this.position = new int[size];
+        this.distance = new float[size];
+        this.index    = getUsableIndex(index, size);
+        this.search   = (this.index != null) ? this.index.nearest(fromLat, fromLon) : null;
+    }
+
+    // the O(n) setup, then sort the first "count" positions.
+    // return false if it was stopped early, in which case the ordering can't be used.
+    boolean initialize(int count) {
+        int size = order.length;
+
+        for (int start=0; start < size; start += CHUNK_SIZE) {
+            if (engine.isSuperseded(fix)) return false;
+
+            int end = Math.min(start + CHUNK_SIZE, size);
+            for (int i=start; i < end; i++) {
+                order[i]    = i;
+                position[i] = i;
+            }
+            if (search == null) {
+                store.updateDistance(Geodesic.Mode.HAVERSINE, fromLat, fromLon, start, end, distance);
+            }
+        }
+
+        extend(count);
+        return !engine.isSuperseded(fix);
+    }
+
+    int getFix() {
+        return fix;
+    }
+
+    // meters from the position that this ordering is for
+    float getDisplacement(double lat, double lon) {
+        return (float) Geodesic.distance(Geodesic.Mode.HAVERSINE, fromLat, fromLon, lat, lon);
+    }
+
+    // the smallest difference between the distances of neighboring places in positions [0, count],
+    // or 0 when that part of the list isn't sorted.
+    // moving less than half of it can't change the order of positions [0, count), or move another place into them.
+    // on the worker thread.
+    float getMinGap(int count) {
+        int size = order.length;
+        int end  = Math.min(count + 1, size);
+
+        if (end > sortedCount) return 0;
+
+        float gap = Float.MAX_VALUE;
+        for (int i=1; i < end; i++) {
+            gap = Math.min(gap, distance[order[i]] - distance[order[i - 1]]);
+        }
+        if (end < 2) return gap;
+
+        // distances are stored as floats
+        return Math.max(0, gap - (4 * Math.ulp(distance[order[end - 1]])));
+    }
+
+    // "getMinGap" for the visible positions, when the ordering was last published
+    float getVisibleGap() {
+        return visibleGap;
+    }
+
+    void setVisibleGap(float meters) {
+        visibleGap = meters;
+    }
+
+    int size() {
+        return position.length;
+    }
+
+    int getSortedCount() {
+        return sortedCount;
+    }
+
+    // a copy of the sorted prefix and its distances, to publish (see: "FilterableAdapter.setOrderPrefix").
+    // it costs O(k) for k sorted places, since the rest of "order" is never published.
+    Snapshot snapshot() {
+        int     count   = sortedCount;
+        int[]   indices = Arrays.copyOf(order, count);  // "order" continues to change with each extension
+        float[] meters  = new float[count];
+
+        for (int i=0; i < count; i++) {
+            meters[i] = distance[indices[i]];
+        }
+        return new Snapshot(indices, meters);
+    }
+
+    // sort the first "count" positions.
+    // return a copy of the sorted prefix to publish, or null if nothing was changed.
+    Snapshot extend(int count) {
+        int size  = order.length;
+        int start = sortedCount;
+
+        if (count > size) count = size;
+        if (count <= start) return null;
+
+        count = getSortCount(count);
+
+        if (search != null) {
+            int pos = start;
+            int idx;
+
+            while ((pos < count) && ((idx = search.next()) >= 0)) {
+                // swap into the next position of the sorted prefix
+                int from = position[idx];
+                if (from < pos) continue;  // kept by "repair"
+
+                distance[idx] = (float) search.getDistance();
+                if (from != pos) {
+                    int other       = order[pos];
+                    order[from]     = other;
+                    position[other] = from;
+                    order[pos]      = idx;
+                    position[idx]   = pos;
+                }
+                pos++;
+
+                if (((pos & 1023) == 0) && engine.isSuperseded(fix)) break;
+            }
+            setSortedCount(pos);
+        }
+        else {
+            if (stale && !updateRemainder()) return null;
+            if (engine.isSuperseded(fix)) return null;
+
+            IndexSort.select(order, distance, start, size, count);
+            IndexSort.sort(order, distance, start, count);
+
+            for (int i=start; i < size; i++) {
+                position[order[i]] = i;
+            }
+            setSortedCount(count);
+        }
+        if (engine.isSuperseded(fix)) return null;
+
+        return snapshot();
+    }
+
+    // twice as many places are sorted as requested, which leaves room for a repair to keep the requested ones (see: "canRepair").
+    // without the spatial index, it costs little more than the O(n) selection.
+    private int getSortCount(int count) {
+        return (int) Math.min(order.length, 2L * count);
+    }
+
+    private void setSortedCount(int count) {
+        int size = order.length;
+
+        // places join the sorted prefix nearest first, so none of the others is nearer than the last one
+        if (count >= size)  floor = Float.MAX_VALUE;
+        else if (count > 0) floor = distance[order[count - 1]];
+        else                floor = 0;
+
+        sortedCount = count;
+    }
+
+    // without the spatial index: recalculate the distances that are from an earlier position.
+    // return false if it was stopped early.
+    private boolean updateRemainder() {
+        int size = order.length;
+
+        for (int start=0; start < size; start += CHUNK_SIZE) {
+            if (engine.isSuperseded(fix)) return false;
+
+            store.updateDistance(Geodesic.Mode.HAVERSINE, fromLat, fromLon, start, Math.min(start + CHUNK_SIZE, size), distance);
+        }
+        stale = false;
+        return true;
+    }
+
+    private static KdTree getUsableIndex(KdTree index, int size) {
+        return ((index != null) && (index.size() == size)) ? index : null;
+    }
+
+    // =================================================
+    // repair for a new position
+    //
+    // moving by "d" meters changes the distance to every place by at most "d" (triangle inequality), so:
+    //   * a place can only pass the neighbors whose distances were within 2 * d of its own
+    //   * no place in the remainder can become nearer than (floor - d)
+    // the sorted prefix is sorted again by its new distances, which only moves the places with a narrow gap,
+    // and the places that are still nearer than (floor - d) stay in the prefix. only the remainder is searched again.
+    // =================================================
+
+    // true when moving to a new position can't change the order of positions [0, visibleCount) (see: "getMinGap")
+    boolean canSkip(double lat, double lon, int visibleCount) {
+        return (2 * getDisplacement(lat, lon)) < getMinGap(visibleCount);
+    }
+
+    // true when "repair" costs less than a new ordering
+    boolean canRepair(KdTree index, double lat, double lon, int count) {
+        int size = order.length;
+
+        if (getUsableIndex(index, size) != this.index) return false;
+        if (search != null) return true;  // the remainder is searched again in O(log n) per place
+
+        // without the spatial index, the remainder can only be searched again after an O(n) pass,
+        // so the first "count" places have to stay in the prefix
+        int end = Math.min(count, size);
+        if (end > sortedCount) return false;
+        if (end == 0) return true;
+
+        return distance[order[end - 1]] <= (floor - (2 * getDisplacement(lat, lon)));
+    }
+
+    // order by distance from a new position, and sort the first "count" positions.
+    // return a copy of the sorted prefix to publish, or null if it was stopped early.
+    Snapshot repair(int fix, double lat, double lon, int count) {
+        float displacement = getDisplacement(lat, lon);
+        int   kept         = sortedCount;
+
+        this.fix     = fix;
+        this.fromLat = lat;
+        this.fromLon = lon;
+
+        store.updateDistance(Geodesic.Mode.HAVERSINE, lat, lon, order, 0, kept, distance);
+        resort(kept);
+
+        // the places that might be passed by a place from the remainder rejoin it
+        float bound = floor - displacement;
+        while ((kept > 0) && (distance[order[kept - 1]] > bound)) kept--;
+
+        floor       = Math.max(0, bound);
+        sortedCount = kept;
+
+        if (search != null) search = index.nearest(lat, lon);
+        else                stale  = true;
+
+        extend(count);
+        if (engine.isSuperseded(fix)) return null;
+
+        return snapshot();
+    }
+
+    // insertion sort of positions [0, count), which are nearly sorted.
+    // when too many places move (ex: a dense cluster), it falls back to a full sort of the prefix.
+    private void resort(int count) {
+        long moves = 8L * count;
+
+        for (int i=1; i < count; i++) {
+            int   idx    = order[i];
+            float meters = distance[idx];
+            int   j      = i;
+
+            while ((j > 0) && (distance[order[j - 1]] > meters) && (--moves >= 0)) {
+                order[j]           = order[j - 1];
+                position[order[j]] = j;
+                j--;
+            }
+            order[j]      = idx;
+            position[idx] = j;
+
+            if (moves < 0) {
+                IndexSort.sort(order, distance, 0, count);
+
+                for (int k=0; k < count; k++) {
+                    position[order[k]] = k;
+                }
+                return;
+            }
+        }
+    }
+}
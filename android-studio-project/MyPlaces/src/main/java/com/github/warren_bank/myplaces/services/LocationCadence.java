@@ -0,0 +1,71 @@
+package com.github.warren_bank.myplaces.services;
+
+import android.location.Location;
+
+// =================================================
+// chooses how often to request a new position, while the places are sorted by distance.
+//
+// the order of two places can only change after moving at least half of the difference between their distances
+// (triangle inequality), so there is no reason to request positions that are closer together than that:
+//   * the minimum distance between updates is half of the smallest gap between the distances of the visible places
+//   * the interval is the time it takes to move that far at the observed speed
+// when standing still, the interval is the longest allowed.
+// =================================================
+public class LocationCadence {
+    public static final int   MIN_INTERVAL = 5;     // seconds
+    public static final float MIN_DISTANCE = 1.5f;  // meters, about 5 ft
+    public static final float MAX_DISTANCE = 500f;  // meters
+
+    private static final float MIN_SPEED    = 0.3f;  // meters per second, slower than this is standing still
+    private static final float SPEED_WEIGHT = 0.5f;  // of the newest observation, in the moving average
+
+    private int      maxInterval;   // seconds
+    private float    speed;         // meters per second, moving average
+    private float    gap;           // meters, or 0 when unknown
+    private Location previous;
+
+    public LocationCadence(int maxInterval) {
+        this.maxInterval = maxInterval;
+    }
+
+    public void setMaxInterval(int seconds) {
+        maxInterval = seconds;
+    }
+
+    // the speed is reported by the GPS, or estimated from the previous position
+    public void onLocation(Location location) {
+        float observed = -1;
+
+        if (location.hasSpeed()) {
+            observed = location.getSpeed();
+        }
+        else if (previous != null) {
+            long millis = location.getTime() - previous.getTime();
+            if (millis > 0) observed = (location.distanceTo(previous) * 1000f) / millis;
+        }
+
+        if (observed >= 0) {
+            speed = (previous == null) ? observed : (SPEED_WEIGHT * observed) + ((1 - SPEED_WEIGHT) * speed);
+        }
+        previous = location;
+    }
+
+    // the smallest difference between the distances of two neighboring places in the visible part of the list
+    public void onVisibleGap(float meters) {
+        gap = meters;
+    }
+
+    public float getMinDistance() {
+        if (!(gap > 0)) return MIN_DISTANCE;
+
+        return Math.max(MIN_DISTANCE, Math.min(MAX_DISTANCE, gap / 2));
+    }
+
+    // seconds
+    public int getInterval() {
+        if (speed < MIN_SPEED) return maxInterval;
+
+        int seconds = (int) Math.ceil(getMinDistance() / speed);
+        return Math.max(Math.min(MIN_INTERVAL, maxInterval), Math.min(maxInterval, seconds));
+    }
+}
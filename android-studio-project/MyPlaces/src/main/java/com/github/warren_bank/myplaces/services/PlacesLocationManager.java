@@ -1,8 +1,8 @@
 package com.github.warren_bank.myplaces.services;
 
-import com.github.warren_bank.myplaces.models.WaypointListItem;
+import com.github.warren_bank.myplaces.helpers.KdTree;
+import com.github.warren_bank.myplaces.models.WaypointStore;
 
-import com.github.warren_bank.filterablerecyclerview.FilterableListItem;
 import com.github.warren_bank.filterablerecyclerview.FilterableAdapter;
 
 import android.Manifest;
@@ -16,22 +16,36 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 
-import java.util.Collections;
-import java.util.List;
-
 public class PlacesLocationManager {
     private Activity                    activity;
     private LocationManager             locationManager;
-    private List<FilterableListItem>    unfilteredList;
+    private WaypointStore               waypointStore;
     private FilterableAdapter           recyclerFilterableAdapter;
     private PlacesLocationListener      places_locationListener;
-    private int                         interval;
+    private int                         interval;           // seconds, the longest interval between updates (or 0 when stopped)
+    private LocationCadence             cadence;
+    private int                         requestedInterval;  // seconds
+    private float                       requestedDistance;  // meters
+
+    // built once per loaded file
+    private volatile KdTree             spatialIndex;
+
+    // partial ordering by distance from the most recent position (see: "DistanceEngine.getOrdering").
+    // it is kept while another sort order is displayed, and only replaced when a new position is received.
+    private DistanceEngine              distanceEngine;
+    private int                         requestedCount;
+    private int                         visibleCount;
+    private boolean                     is_extending;
+    private boolean                     is_publishing;
 
     private static final int            PERMISSIONS_REQUEST_CODE = 0;
+    private static final int            PAGE_SIZE                = 100;  // number of nearest places that are sorted at a time
+    private static final int            DEFAULT_VISIBLE_COUNT    = 20;   // number of rows on screen, until the list is scrolled
 
     private class PlacesLocationListener implements LocationListener {
         @Override
         public void onLocationChanged(Location location) {
+            cadence.onLocation(location);
             PlacesLocationManager.this.calculateDistance(location);
         }
 
@@ -50,17 +64,23 @@ public class PlacesLocationManager {
 
     public PlacesLocationManager(
         Activity                    activity,
-        List<FilterableListItem>    unfilteredList,
+        WaypointStore               waypointStore,
         FilterableAdapter           recyclerFilterableAdapter
     ) {
         this.activity                  = activity;
         this.locationManager           = (LocationManager)activity.getSystemService(Context.LOCATION_SERVICE);
-        this.unfilteredList            = unfilteredList;
+        this.waypointStore             = waypointStore;
         this.recyclerFilterableAdapter = recyclerFilterableAdapter;
         this.places_locationListener   = new PlacesLocationListener();
         this.interval                  = 0;
+        this.cadence                   = new LocationCadence(0);
+        this.distanceEngine            = new DistanceEngine(waypointStore);
+        this.requestedCount            = PAGE_SIZE;
+        this.visibleCount              = DEFAULT_VISIBLE_COUNT;
     }
 
+    // "seconds" is the longest interval between updates.
+    // while moving, updates are requested more often (see: "LocationCadence").
     public void setInterval(int seconds) {
         if (!has_permission()) {
             locationManager = null;
@@ -80,18 +100,42 @@ public class PlacesLocationManager {
             if (!locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) return;
 
             interval = seconds;
+            cadence.setMaxInterval(seconds);
+
+            requestUpdates(cadence.getInterval(), cadence.getMinDistance());
+        }
+    }
+
+    private void requestUpdates(int seconds, float minDistance) {
+        requestedInterval = seconds;
+        requestedDistance = minDistance;
 
-            long minTime      = seconds * 1000;  // milliseconds
-            float minDistance = 1.5f;            // 1.5 meters is about 5 ft
-            locationManager.requestLocationUpdates(
-                LocationManager.GPS_PROVIDER,
-                minTime,
-                minDistance,
-                places_locationListener
-            );
+        long minTime = seconds * 1000;  // milliseconds
+        locationManager.requestLocationUpdates(
+            LocationManager.GPS_PROVIDER,
+            minTime,
+            minDistance,
+            places_locationListener
+        );
+    }
+
+    // on the UI thread, after each position.
+    // the request is only replaced when the cadence changes by a factor of 2 or more, since each request restarts the GPS schedule.
+    private void updateCadence() {
+        if ((locationManager == null) || (interval == 0)) return;
+
+        int   seconds     = cadence.getInterval();
+        float minDistance = cadence.getMinDistance();
+
+        if (isSignificantChange(requestedInterval, seconds) || isSignificantChange(requestedDistance, minDistance)) {
+            requestUpdates(seconds, minDistance);
         }
     }
 
+    private static boolean isSignificantChange(float before, float after) {
+        return (after >= (before * 2)) || (before >= (after * 2));
+    }
+
     public void clearInterval() {
         // sanity checks
         if (locationManager == null) return;
@@ -102,6 +146,31 @@ public class PlacesLocationManager {
         }
     }
 
+    // To be called when the activity is destroyed
+    public void destroy() {
+        clearInterval();
+        distanceEngine.shutdown();
+    }
+
+    // number of positions that were skipped because a more recent one arrived, before or while they were processed
+    public int getCoalescedCount() {
+        return distanceEngine.getCoalescedCount();
+    }
+
+    public int getDroppedCount() {
+        return distanceEngine.getDroppedCount();
+    }
+
+    // number of positions that couldn't change the visible order, so the list wasn't sorted again
+    public int getSkippedCount() {
+        return distanceEngine.getSkippedCount();
+    }
+
+    // number of positions that were a short move from the current ordering, so only part of the list was sorted again
+    public int getRepairedCount() {
+        return distanceEngine.getRepairedCount();
+    }
+
     public void refresh() {
         // sanity checks
         if (locationManager == null) return;
@@ -117,25 +186,108 @@ public class PlacesLocationManager {
         );
     }
 
-    protected void calculateDistance(Location location) {
+    // To be called after all data has been loaded into "waypointStore" and the adapter.
+    // The spatial index is built in the background. Until it is ready, distances are calculated without it.
+    public void onWaypointsLoaded() {
+        visibleCount = DEFAULT_VISIBLE_COUNT;  // until the new list is displayed
+
         new AsyncTask<Void, Void, Void>() {
             @Override
             protected Void doInBackground(final Void ... params) {
+                spatialIndex = waypointStore.createSpatialIndex();
+                return null;
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);  // not queued ahead of the first sort
+    }
 
-                for (int i=0; i < unfilteredList.size(); i++) {
-                    WaypointListItem point = (WaypointListItem) unfilteredList.get(i);
-                    point.updateDistance(location);
-                }
+    // To be called on the UI thread before another sort order is displayed.
+    // The ordering by distance is kept, but it is no longer passed to the adapter.
+    public void pauseOrdering() {
+        is_publishing = false;
+        visibleCount  = DEFAULT_VISIBLE_COUNT;  // until the ordering by distance is displayed again
+    }
 
-                Collections.sort(unfilteredList, WaypointListItem.distanceOrderComparator);
-                return null;
+    // To be called on the UI thread when the sort order by distance is displayed.
+    // The ordering by distance from the most recent position is passed to the adapter again, without sorting.
+    // Return false if no position has been received yet.
+    public boolean resumeOrdering() {
+        final DistanceOrdering current = distanceEngine.getOrdering();
+
+        is_publishing = true;
+        if (current == null) return false;
+
+        distanceEngine.snapshot(current, new DistanceEngine.Listener() {
+            @Override
+            public void onOrder(DistanceOrdering source, DistanceOrdering.Snapshot snapshot) {
+                publish(source, snapshot);
             }
- 
+        });
+        return true;
+    }
+
+    // To be called on the UI thread after each layout of the list that is sorted by distance (ex: while scrolling, or after a filter or an ordering is published).
+    // "pos" is the position of the last visible row in the ordering by distance (see: "FilterableAdapter.getOrderedPosition").
+    // When it is near the end of the sorted prefix of the list (or beyond it), more of the list is sorted in the background.
+    public void onPositionVisible(int pos) {
+        final DistanceOrdering current = distanceEngine.getOrdering();
+
+        if (pos < 0) return;
+
+        visibleCount = pos + 1;
+
+        if (current == null) return;
+
+        if (is_extending || !is_publishing) return;
+
+        int sorted = current.getSortedCount();
+        if (sorted >= current.size()) return;
+        if ((pos + (PAGE_SIZE / 2)) < sorted) return;
+
+        // grow geometrically, so a filtered list that only shows a few items from each page doesn't need many passes
+        final int count = Math.max(sorted * 2, pos + PAGE_SIZE);
+        requestedCount  = Math.max(requestedCount, count);
+        is_extending    = true;
+
+        distanceEngine.extend(current, count, new DistanceEngine.Listener() {
             @Override
-            protected void onPostExecute(final Void result) {
-                recyclerFilterableAdapter.refresh();
+            public void onOrder(DistanceOrdering source, DistanceOrdering.Snapshot snapshot) {
+                is_extending = false;
+
+                publish(source, snapshot);
             }
-        }.execute();
+        });
+    }
+
+    // fixes that arrive faster than they can be processed are coalesced by the engine, so only the most recent one is ordered.
+    // fixes that are too close to the previous ordering to change the visible order are skipped by the engine.
+    // fixes that are a short move from it only sort the places whose order might have changed.
+    protected void calculateDistance(final Location location) {
+        distanceEngine.submit(
+            location.getLatitude(),
+            location.getLongitude(),
+            spatialIndex,
+            requestedCount,
+            visibleCount,
+            new DistanceEngine.Listener() {
+                @Override
+                public void onOrder(DistanceOrdering source, DistanceOrdering.Snapshot snapshot) {
+                    cadence.onVisibleGap(source.getVisibleGap());
+                    updateCadence();
+
+                    publish(source, snapshot);
+                }
+            }
+        );
+    }
+
+    // on the UI thread
+    private void publish(DistanceOrdering source, DistanceOrdering.Snapshot snapshot) {
+        if ((source == null) || (snapshot == null)) return;
+        if (!is_publishing) return;                           // another sort order is displayed
+        if (source != distanceEngine.getOrdering()) return;   // superseded by a more recent position
+
+        waypointStore.setDistances(snapshot.order, snapshot.distance);  // the distances that are displayed
+        recyclerFilterableAdapter.setOrderPrefix(snapshot.order);       // only the sorted prefix
     }
 
     private boolean has_permission() {
@@ -0,0 +1,150 @@
+package com.github.warren_bank.myplaces.helpers;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+// =================================================
+// micro-benchmark: "CoordinateParser" vs the previous path,
+// which copied each value into a String (substring + trim, as done by "split") and parsed it with "Location.convert".
+// "android.location.Location" isn't available on a desktop JVM, so "convert" is a port of its implementation.
+//
+// plain Java, no Android classes: run "main" on a desktop JVM, with the compiled classes of both source sets on the classpath.
+// arguments (optional): number of coordinates, number of timed passes.
+//
+// every value is also checked for a bit-identical result.
+// =================================================
+public class CoordinateParserBenchmark {
+    private static final int WARMUP_PASSES = 5;
+
+    public static void main(String[] args) {
+        int count  = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int passes = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        // "lat,lon " pairs, as in the text of a KML <coordinates> element
+        StringBuilder text = new StringBuilder(count * 24);
+        int[] starts       = new int[count];
+        int[] ends         = new int[count];
+        Random random      = new Random(1);
+
+        for (int i=0; i < count; i++) {
+            double value = ((i & 1) == 0)
+                ? ((random.nextDouble() * 180) - 90)
+                : ((random.nextDouble() * 360) - 180);
+
+            if (i > 0) text.append(((i & 1) == 0) ? " " : ",");
+            starts[i] = text.length();
+            text.append(String.format(Locale.US, "%." + (4 + random.nextInt(5)) + "f", value));
+            ends[i]   = text.length();
+        }
+
+        String chars = text.toString();
+
+        for (int i=0; i < count; i++) {
+            double expected = convert(chars.substring(starts[i], ends[i]).trim());
+            double actual   = CoordinateParser.parse(chars, starts[i], ends[i]);
+
+            if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+                throw new AssertionError(chars.substring(starts[i], ends[i]) + ": " + expected + " != " + actual);
+            }
+        }
+
+        double sink = 0;
+        for (int w=0; w < WARMUP_PASSES; w++) {
+            sink += parseStrings(chars, starts, ends) + parseRanges(chars, starts, ends);
+        }
+
+        long stringsNanos = 0;
+        long rangesNanos  = 0;
+        for (int p=0; p < passes; p++) {
+            long t0 = System.nanoTime();
+            sink += parseStrings(chars, starts, ends);
+            long t1 = System.nanoTime();
+            sink += parseRanges(chars, starts, ends);
+            long t2 = System.nanoTime();
+
+            stringsNanos += (t1 - t0);
+            rangesNanos  += (t2 - t1);
+        }
+
+        System.out.println(String.format(
+            Locale.US,
+            "%d coordinates, %d passes: Location.convert %.1f ms/pass, CoordinateParser %.1f ms/pass (%.1fx) [%s]",
+            count,
+            passes,
+            (stringsNanos / 1e6) / passes,
+            (rangesNanos  / 1e6) / passes,
+            ((double) stringsNanos) / rangesNanos,
+            (sink != 0) ? "ok" : "-"
+        ));
+    }
+
+    private static double parseStrings(String chars, int[] starts, int[] ends) {
+        double sum = 0;
+        for (int i=0; i < starts.length; i++) {
+            sum += convert(chars.substring(starts[i], ends[i]).trim());
+        }
+        return sum;
+    }
+
+    // port of "android.location.Location.convert(String)"
+    private static double convert(String coordinate) {
+        if (coordinate == null) throw new NullPointerException("coordinate");
+
+        boolean negative = false;
+        if (coordinate.charAt(0) == '-') {
+            coordinate = coordinate.substring(1);
+            negative = true;
+        }
+
+        StringTokenizer st = new StringTokenizer(coordinate, ":");
+        int tokens = st.countTokens();
+        if (tokens < 1)                                                 throw new IllegalArgumentException("coordinate=" + coordinate);
+
+        try {
+            String degrees = st.nextToken();
+            double val;
+            if (tokens == 1) {
+                val = Double.parseDouble(degrees);
+                return negative ? -val : val;
+            }
+
+            String minutes = st.nextToken();
+            int deg = Integer.parseInt(degrees);
+            double min;
+            double sec = 0.0;
+            boolean secPresent = false;
+
+            if (st.hasMoreTokens()) {
+                min = Integer.parseInt(minutes);
+                String seconds = st.nextToken();
+                sec = Double.parseDouble(seconds);
+                secPresent = true;
+            }
+            else {
+                min = Double.parseDouble(minutes);
+            }
+
+            boolean isNegative180 = negative && (deg == 180) && (min == 0) && (sec == 0);
+
+            if ((deg < 0.0) || ((deg > 179) && !isNegative180))         throw new IllegalArgumentException("coordinate=" + coordinate);
+            if ((min < 0) || (min >= 60) || (secPresent && (min > 59))) throw new IllegalArgumentException("coordinate=" + coordinate);
+            if ((sec < 0) || (sec >= 60))                               throw new IllegalArgumentException("coordinate=" + coordinate);
+
+            val = (deg * 3600.0) + (min * 60.0) + sec;
+            val /= 3600.0;
+            return negative ? -val : val;
+        }
+        catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("coordinate=" + coordinate);
+        }
+    }
+
+    private static double parseRanges(String chars, int[] starts, int[] ends) {
+        double sum = 0;
+        for (int i=0; i < starts.length; i++) {
+            sum += CoordinateParser.parse(chars, starts[i], ends[i]);
+        }
+        return sum;
+    }
+}
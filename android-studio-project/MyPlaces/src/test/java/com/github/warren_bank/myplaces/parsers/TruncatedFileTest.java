@@ -0,0 +1,112 @@
+package com.github.warren_bank.myplaces.parsers;
+
+import com.github.warren_bank.myplaces.models.WaypointListItem;
+import com.github.warren_bank.myplaces.models.WaypointStore;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+// =================================================
+// test: a GPX file that ends in the middle of a waypoint
+// keeps the waypoints that were read before the error, and is reported as a partial result.
+//
+// plain Java, no Android classes: run "main" on a desktop JVM, with the compiled classes of both source sets
+// and an implementation of the XmlPullParser api (ex: kxml2) on the classpath.
+// exits with an AssertionError when a check fails.
+// =================================================
+public class TruncatedFileTest {
+    private static final int COUNT = (AbstractParser.BATCH_SIZE * 2) + 500;  // more than one batch is published before the error
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("truncated", ".gpx");
+        file.deleteOnExit();
+
+        byte[] xml = createGpx(COUNT).getBytes("UTF-8");
+
+        // complete file
+        write(file, xml, xml.length);
+        check(file, true, COUNT);
+
+        // truncated inside of the last waypoint
+        int end = new String(xml, "UTF-8").lastIndexOf("<wpt ") + 20;
+        write(file, xml, end);
+        check(file, false, COUNT - 1);
+
+        System.out.println("ok");
+    }
+
+    private static void check(File file, boolean expectComplete, int expectCount) {
+        WaypointStore store  = new WaypointStore();
+        final int[] received = new int[]{ 0 };
+
+        boolean complete = new TestGpxParser(file.getAbsolutePath()).parse(store, new AbstractParser.BatchListener() {
+            @Override
+            public boolean onBatch(ArrayList<WaypointListItem> batch) {
+                for (WaypointListItem item : batch) {
+                    assertEquals("nonce", received[0]++, item.getNonce());
+                }
+                return true;
+            }
+        });
+
+        if (complete != expectComplete) throw new AssertionError("complete: expected " + expectComplete + ", was " + complete);
+
+        assertEquals("store size",    expectCount, store.size());
+        assertEquals("batched items", expectCount, received[0]);
+
+        for (int i=0; i < expectCount; i++) {
+            assertEquals("latitude", i, (int) Math.round(store.getLatitude(i) * 1000));
+            if (!("place " + i).equals(store.getName(i))) throw new AssertionError("name: " + store.getName(i));
+        }
+    }
+
+    private static String createGpx(int count) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+        for (int i=0; i < count; i++) {
+            sb.append("  <wpt lat=\"").append(i / 1000.0).append("\" lon=\"-").append(i / 1000.0).append("\"><name>place ").append(i).append("</name></wpt>\n");
+        }
+        sb.append("</gpx>\n");
+        return sb.toString();
+    }
+
+    private static void write(File file, byte[] bytes, int length) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes, 0, length);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static void assertEquals(String label, int expected, int actual) {
+        if (expected != actual) throw new AssertionError(label + ": expected " + expected + ", was " + actual);
+    }
+
+    // "android.util.Xml" is not available on a desktop JVM
+    private static class TestGpxParser extends GpxParser {
+        TestGpxParser(String filepath) {
+            super(filepath);
+        }
+
+        @Override
+        protected XmlPullParser getXmlPullParser(InputStream in) throws XmlPullParserException {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+
+            XmlPullParser xpp = factory.newPullParser();
+            xpp.setInput(in, null);
+            return xpp;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.github.warren_bank.myplaces.services;
+
+import com.github.warren_bank.myplaces.helpers.Geodesic;
+import com.github.warren_bank.myplaces.helpers.IndexSort;
+import com.github.warren_bank.myplaces.helpers.KdTree;
+import com.github.warren_bank.myplaces.models.WaypointStore;
+
+import java.util.Random;
+
+// =================================================
+// test: an ordering for position B that is never published (ex: B was superseded)
+// doesn't change the distances that the ordering for position A compares,
+// so the decision to skip or repair for a later position A' still matches a full sort from A'.
+//
+// plain Java, no Android classes: run "main" on a desktop JVM, with the compiled classes of both source sets on the classpath.
+// exits with an AssertionError when a check fails.
+// =================================================
+public class SupersededFixTest {
+    private static final int    PLACES  = 20000;
+    private static final int    COUNT   = 200;   // sorted places that are requested
+    private static final int    VISIBLE = 10;    // visible positions
+
+    private static final double LAT     = 40.0;
+    private static final double LON     = -75.0;
+    private static final double METERS_PER_DEGREE = 111195.0;
+
+    public static void main(String[] args) {
+        WaypointStore store = createStore(PLACES, new Random(42));
+
+        check(store, null);
+        check(store, store.createSpatialIndex());
+
+        System.out.println("ok");
+    }
+
+    private static void check(WaypointStore store, KdTree index) {
+        String mode = (index == null) ? "scan" : "kd";
+
+        // no position is submitted, so fix 0 is never superseded
+        DistanceEngine engine = new DistanceEngine(store);
+
+        DistanceOrdering a = new DistanceOrdering(engine, 0, store, LAT, LON, index);
+        assertTrue(mode + ": initialize A", a.initialize(COUNT));
+
+        // an ordering for B that is calculated, but never installed or published
+        DistanceOrdering b = new DistanceOrdering(engine, 0, store, LAT + (200 / METERS_PER_DEGREE), LON, index);
+        assertTrue(mode + ": initialize B", b.initialize(COUNT));
+
+        // the displayed distances only change when a snapshot is published
+        for (int i=0; i < store.size(); i++) {
+            assertTrue(mode + ": displayed distance unchanged", store.getDistance(i) == 0);
+        }
+
+        // a short move from A can't change the visible order
+        float[] ref    = new float[store.size()];
+        int[]   order  = fullSort(store, LAT, LON, ref);
+        float   refGap = getMinGap(order, ref, VISIBLE);
+        assertTrue(mode + ": gap", refGap > 0);
+
+        double lat1 = LAT + ((refGap / 4) / METERS_PER_DEGREE);
+        assertTrue(mode + ": skip A1", a.canSkip(lat1, LON, VISIBLE));
+        assertPrefix(mode + ": A1", a.snapshot().order, fullSort(store, lat1, LON, ref), VISIBLE);
+
+        // a longer move from A is repaired
+        double lat2 = LAT + (20 / METERS_PER_DEGREE);
+        assertTrue(mode + ": don't skip A2", !a.canSkip(lat2, LON, VISIBLE));
+
+        // without the spatial index, the requested places have to stay in the prefix (see: "DistanceOrdering.canRepair")
+        float   displacement = a.getDisplacement(lat2, LON);
+        int     sortCount    = Math.min(2 * COUNT, store.size());
+        boolean expectRepair = (index != null) || (ref(store, LAT, LON, order, COUNT - 1) <= (ref(store, LAT, LON, order, sortCount - 1) - (2 * displacement)));
+        assertTrue(mode + ": repair A2", a.canRepair(index, lat2, LON, COUNT) == expectRepair);
+
+        DistanceOrdering.Snapshot snapshot;
+        if (expectRepair) {
+            snapshot = a.repair(0, lat2, LON, COUNT);
+        }
+        else {
+            DistanceOrdering c = new DistanceOrdering(engine, 0, store, lat2, LON, index);
+            assertTrue(mode + ": initialize A2", c.initialize(COUNT));
+            snapshot = c.snapshot();
+        }
+        assertTrue(mode + ": snapshot A2", (snapshot != null) && (snapshot.order.length >= COUNT));
+
+        int[] order2 = fullSort(store, lat2, LON, ref);
+        assertPrefix(mode + ": A2", snapshot.order, order2, snapshot.order.length);
+
+        for (int i=0; i < snapshot.order.length; i++) {
+            float expected = ref[order2[i]];
+            assertTrue(mode + ": distance A2 at " + i, Math.abs(snapshot.distance[i] - expected) <= (1e-6 * Math.max(1, expected)));
+        }
+    }
+
+    private static WaypointStore createStore(int size, Random random) {
+        WaypointStore store = new WaypointStore(size);
+
+        // about 5 km across
+        for (int i=0; i < size; i++) {
+            store.add(LAT + ((random.nextDouble() - 0.5) * 0.05), LON + ((random.nextDouble() - 0.5) * 0.05), "place " + i, i);
+        }
+        store.trimToSize();
+        return store;
+    }
+
+    // store indices by distance from a position, and the distance to each store index in "distance"
+    private static int[] fullSort(WaypointStore store, double lat, double lon, float[] distance) {
+        int   size  = store.size();
+        int[] order = new int[size];
+
+        for (int i=0; i < size; i++) {
+            order[i] = i;
+        }
+        store.updateDistance(Geodesic.Mode.HAVERSINE, lat, lon, 0, size, distance);
+        IndexSort.sort(order, distance, 0, size);
+        return order;
+    }
+
+    // distance from a position to the place at position "pos" of "order"
+    private static float ref(WaypointStore store, double lat, double lon, int[] order, int pos) {
+        float[] distance = new float[store.size()];
+        store.updateDistance(Geodesic.Mode.HAVERSINE, lat, lon, order, pos, pos + 1, distance);
+        return distance[order[pos]];
+    }
+
+    // same as "DistanceOrdering.getMinGap", from a full sort
+    private static float getMinGap(int[] order, float[] distance, int count) {
+        float gap = Float.MAX_VALUE;
+        for (int i=1; i <= count; i++) {
+            gap = Math.min(gap, distance[order[i]] - distance[order[i - 1]]);
+        }
+        return Math.max(0, gap - (4 * Math.ulp(distance[order[count]])));
+    }
+
+    private static void assertPrefix(String message, int[] actual, int[] expected, int count) {
+        assertTrue(message + ": length", actual.length >= count);
+
+        for (int i=0; i < count; i++) {
+            if (actual[i] != expected[i]) throw new AssertionError(message + ": position " + i + ": expected " + expected[i] + ", was " + actual[i]);
+        }
+    }
+
+    private static void assertTrue(String message, boolean value) {
+        if (!value) throw new AssertionError(message);
+    }
+}
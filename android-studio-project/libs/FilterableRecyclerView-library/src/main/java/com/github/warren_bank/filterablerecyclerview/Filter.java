@@ -3,9 +3,48 @@ package com.github.warren_bank.filterablerecyclerview;
 abstract public class Filter extends android.widget.Filter {
     public CharSequence constraint = "";
 
+    // when true, results are approximate matches that tolerate typos, ranked by the number of typos (see: "FuzzyMatcher")
+    public volatile boolean fuzzy = false;
+
+    // incremented by every request, so a filter pass in progress can tell that its result would already be stale
+    private volatile int requestCount;
+
     public void query(CharSequence constraint) {
         this.constraint = constraint;
 
+        request();
+    }
+
+    public void setFuzzy(boolean fuzzy) {
+        this.fuzzy = fuzzy;
+
+        request();
+    }
+
+    // filter again with the current constraint (ex: after the items changed)
+    public void requery() {
+        request();
+    }
+
+    // to be called when a newer request is certain to follow (see: "QueryScheduler")
+    void cancel() {
+        requestCount++;
+    }
+
+    // to be read by "performFiltering" before it starts
+    protected int getRequestCount() {
+        return requestCount;
+    }
+
+    // true when a newer request was made after "getRequestCount" returned "request".
+    // "performFiltering" can then stop and return null: only the result of the newer request will be published.
+    protected boolean isCancelled(int request) {
+        return request != requestCount;
+    }
+
+    private void request() {
+        requestCount++;
+
         filter(constraint);
     }
 }
@@ -4,21 +4,45 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Filterable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.lang.reflect.Constructor;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class FilterableAdapter extends RecyclerView.Adapter<FilterableViewHolder> implements Filterable {
+    // a diff between results is only computed when both are at most this size; larger changes are notified as "notifyDataSetChanged"
+    private static final int MAX_DIFF_SIZE = 2000;
+    private static final int NO_GENERATION = -1;
+    private static final int CANCEL_CHECK_MASK = 1023;  // a filter pass checks whether it was cancelled once per 1024 items
+
     final private int row_layout_id;
-    final private List<FilterableListItem> unfilteredList;
-    final private ArrayList<FilterableListItem> filteredList;
+    final private List<FilterableListItem> filteredListView;
     final private FilterableListItemOnClickListener listener;
-    final private Class filterableViewHolderClass;
-    final private Class parentClass;
-    final private Object parentInstance;
+    final private FilterableViewHolder.Factory holderFactory;
     final private Filter searchFilter;
 
+    // the unfiltered items: the only copy that the adapter keeps of them.
+    // only replaced on the UI thread (see: "addAll", "setItems"), and each filter pass reads a single snapshot.
+    private volatile Items items;
+
+    // optional order of positions in "items" (see: "setOrder", "setOrderPrefix"), or null for the natural order
+    private volatile Order order;
+
+    // optional index for substring queries of 3 or more characters
+    private volatile TrigramIndex searchIndex;
+
+    // incremented whenever the items or their order change, which invalidates the cached results of earlier queries
+    private volatile int dataVersion;
+
+    // the positions in "items" of the items that are displayed. only accessed on the UI thread.
+    // the Filter's worker thread builds each result as a new view, which is swapped in by "publishResults".
+    private IndexView filteredView;
+    private int displayedGeneration;  // the result that "filteredView" holds, or NO_GENERATION after it is resized
+
     public FilterableAdapter(
         int row_layout_id,
         List<FilterableListItem> unfilteredList,
@@ -43,79 +67,94 @@ public class FilterableAdapter extends RecyclerView.Adapter<FilterableViewHolder
         Class parentClass,
         Object parentInstance
     ) {
-        this.row_layout_id             = row_layout_id;
-        this.unfilteredList            = unfilteredList;
-        this.filteredList              = new ArrayList<FilterableListItem>();
-        this.listener                  = listener;
-        this.filterableViewHolderClass = filterableViewHolderClass;
-        this.parentClass               = parentClass;
-        this.parentInstance            = parentInstance;
-        this.searchFilter              = createSearchFilter();
-
-        resetFilteredList();
-    }
-
-    private void resetFilteredList() {
-        filteredList.clear();
-        filteredList.addAll(
-            unfilteredList
+        this(
+            row_layout_id,
+            unfilteredList,
+            listener,
+            new ReflectiveFactory(filterableViewHolderClass, parentClass, parentInstance)
         );
     }
 
-    @Override
-    public FilterableViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        try {
-            View view = LayoutInflater.from(parent.getContext()).inflate(row_layout_id, parent, false);
-            Class[] cArg;
-            FilterableViewHolder holder;
-
-            if ((parentClass == null) || (parentInstance == null)) {
-                cArg     = new Class[3];
-                cArg[0]  = View.class;
-                cArg[1]  = List.class;
-                cArg[2]  = FilterableListItemOnClickListener.class;
-
-                holder = (FilterableViewHolder) filterableViewHolderClass.getDeclaredConstructor(cArg).newInstance(
-                    view,
-                    filteredList,
-                    listener
-                );
+    public FilterableAdapter(
+        int row_layout_id,
+        List<FilterableListItem> unfilteredList,
+        FilterableListItemOnClickListener listener,
+        FilterableViewHolder.Factory holderFactory
+    ) {
+        this.row_layout_id       = row_layout_id;
+        this.items               = Items.copyOf(unfilteredList);  // the caller's list isn't kept
+        this.filteredListView    = createFilteredListView();
+        this.listener            = listener;
+        this.holderFactory       = holderFactory;
+        this.searchFilter        = createSearchFilter();
+
+        this.filteredView        = IndexView.all(order, items.size());
+        this.displayedGeneration = NO_GENERATION;
+    }
+
+    // read-only view of the list that is currently displayed, for view holders.
+    // it follows each swap in "publishResults", so holders never keep a reference to a stale result.
+    private List<FilterableListItem> createFilteredListView() {
+        return new AbstractList<FilterableListItem>() {
+            @Override
+            public FilterableListItem get(int position) {
+                return getFilteredItem(position);
             }
-            else {
-                cArg     = new Class[4];
-                cArg[0]  = parentClass;
-                cArg[1]  = View.class;
-                cArg[2]  = List.class;
-                cArg[3]  = FilterableListItemOnClickListener.class;
-
-                holder = (FilterableViewHolder) filterableViewHolderClass.getDeclaredConstructor(cArg).newInstance(
-                    parentInstance,
-                    view,
-                    filteredList,
-                    listener
-                );
+
+            @Override
+            public int size() {
+                return filteredView.size();
             }
+        };
+    }
 
-            return holder;
-        }
-        catch(Exception e) {
-            return null;
-        }
+    private FilterableListItem getFilteredItem(int position) {
+        return items.get(filteredView.get(position));
+    }
+
+    private static int getUnfilteredPosition(Order order, int i) {
+        return (order == null) ? i : order.get(i);
+    }
+
+    @Override
+    public FilterableViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(row_layout_id, parent, false);
+
+        return holderFactory.create(view, filteredListView, listener);
     }
 
     @Override
     public void onBindViewHolder(FilterableViewHolder holder, final int position) {
         try {
-            final FilterableListItem item = filteredList.get(position);
+            final FilterableListItem item = getFilteredItem(position);
 
-            holder.onUpdate(item);
+            holder.bind(item);
         }
         catch(Exception e) {}
     }
 
     @Override
     public int getItemCount() {
-        return filteredList.size();
+        return filteredView.size();
+    }
+
+    // only used when "setHasStableIds(true)" was called before the adapter was attached
+    @Override
+    public long getItemId(int position) {
+        return getStableId(getFilteredItem(position));
+    }
+
+    private static long getStableId(FilterableListItem item) {
+        return (item instanceof IdentifiableListItem)
+            ? ((IdentifiableListItem) item).getItemId()
+            : RecyclerView.NO_ID;
+    }
+
+    // return the item at a position in the filtered list, or null if the position is out of range
+    public FilterableListItem getItem(int position) {
+        if ((position < 0) || (position >= filteredView.size())) return null;
+
+        return getFilteredItem(position);
     }
 
     @Override
@@ -123,44 +162,494 @@ public class FilterableAdapter extends RecyclerView.Adapter<FilterableViewHolder
         return searchFilter;
     }
 
+    // Add the items at the list positions found by the index, in the order they are displayed.
+    // Items that were appended after the index was built are scanned.
+    private void addIndexedMatches(Items items, Order order, TrigramIndex index, int[] positions, String query, IndexView.Builder matches) {
+        int size    = items.size();
+        int indexed = Math.min(index.size(), size);
+
+        if (order == null) {
+            matches.ensureCapacity(positions.length);
+            for (int p : positions) {
+                if (p < size) matches.add(p);
+            }
+            for (int p = indexed; p < size; p++) {
+                if (SearchKeys.get(items.get(p)).contains(query)) matches.add(p);
+            }
+            return;
+        }
+
+        // sort the positions by their rank in "order"
+        long[] packed = new long[positions.length + (size - indexed)];
+        int count     = 0;
+        for (int p : positions) {
+            if (p < size) packed[count++] = (((long) order.rank(p)) << 32) | p;
+        }
+        for (int p = indexed; p < size; p++) {
+            if (SearchKeys.get(items.get(p)).contains(query)) packed[count++] = (((long) order.rank(p)) << 32) | p;
+        }
+        Arrays.sort(packed, 0, count);
+
+        matches.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            matches.add((int) packed[i]);
+        }
+    }
+
+    // Fuzzy matches are ranked by the number of errors, then in the order they are displayed.
+    // Returns null when the filter request is cancelled.
+    // The narrowing stack isn't used, since a longer query tolerates more errors and can match more items.
+    private IndexView getFuzzyMatches(Items items, String query, int request) {
+        final Order order          = this.order;
+        final TrigramIndex index   = searchIndex;
+        final FuzzyMatcher matcher = new FuzzyMatcher(query);
+
+        int size    = items.size();
+        int indexed = (index != null) ? Math.min(index.size(), size) : 0;
+
+        // ((long) errors << 32) | rank
+        long[] hits = new long[16];
+        int count   = 0;
+
+        if (index != null) {
+            long[] indexHits = index.findFuzzy(matcher);
+
+            hits = new long[Math.max(16, indexHits.length)];
+            for (long hit : indexHits) {
+                int position = (int) hit;
+                if (position >= size) continue;
+
+                int rank = (order != null) ? order.rank(position) : position;
+                hits[count++] = (hit & 0xFFFFFFFF00000000L) | rank;
+            }
+        }
+
+        // items that aren't indexed are scored one at a time
+        Order.Cursor cursor = (order != null) ? order.cursor() : null;
+        for (int i = 0; i < size; i++) {
+            if (((i & CANCEL_CHECK_MASK) == 0) && searchFilter.isCancelled(request)) return null;
+
+            int position = (cursor != null) ? cursor.next() : i;
+            if (position < indexed) continue;
+
+            String key = SearchKeys.get(items.get(position));
+            if (!matcher.mayMatch(FuzzyMatcher.getSignature(key), key.length())) continue;
+
+            int errors = matcher.match(key);
+            if (errors < 0) continue;
+
+            if (count == hits.length) hits = Arrays.copyOf(hits, count * 2);
+            hits[count++] = (((long) errors) << 32) | i;
+        }
+
+        Arrays.sort(hits, 0, count);
+
+        IndexView.Builder matches = new IndexView.Builder();
+        matches.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            matches.add(getUnfilteredPosition(order, (int) hits[i]));
+        }
+        return matches.build();
+    }
+
+    // The first "size" items of a backing array, which is never changed below "size" once it is shared.
+    // Appending writes beyond "size" (or to a larger copy) and creates a new snapshot, so a reader never sees a partial append.
+    private static final class Items extends AbstractList<FilterableListItem> {
+        final private FilterableListItem[] array;
+        final private int size;
+
+        private Items(FilterableListItem[] array, int size) {
+            this.array = array;
+            this.size  = size;
+        }
+
+        static Items copyOf(List<? extends FilterableListItem> list) {
+            FilterableListItem[] array = list.toArray(new FilterableListItem[list.size()]);
+            return new Items(array, array.length);
+        }
+
+        // to be called by the only writer (the UI thread)
+        Items append(List<? extends FilterableListItem> added) {
+            int total                  = size + added.size();
+            FilterableListItem[] array = this.array;
+
+            if (total > array.length) {
+                array = Arrays.copyOf(array, Math.max(total, array.length + (array.length >> 1)));
+            }
+            for (int i = size; i < total; i++) {
+                array[i] = added.get(i - size);
+            }
+            return new Items(array, total);
+        }
+
+        @Override
+        public FilterableListItem get(int position) {
+            if ((position < 0) || (position >= size)) throw new IndexOutOfBoundsException();
+
+            return array[position];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // Creates view holders with the constructor of a class:
+    //   * (View, List, FilterableListItemOnClickListener)
+    //   * or, for an inner class: (parentClass, View, List, FilterableListItemOnClickListener)
+    // The constructor is looked up once.
+    private static class ReflectiveFactory implements FilterableViewHolder.Factory {
+        final private Constructor constructor;
+        final private Object parentInstance;
+
+        ReflectiveFactory(Class filterableViewHolderClass, Class parentClass, Object parentInstance) {
+            Constructor constructor = null;
+            Class[] cArg;
+
+            try {
+                if ((parentClass == null) || (parentInstance == null)) {
+                    cArg     = new Class[3];
+                    cArg[0]  = View.class;
+                    cArg[1]  = List.class;
+                    cArg[2]  = FilterableListItemOnClickListener.class;
+                }
+                else {
+                    cArg     = new Class[4];
+                    cArg[0]  = parentClass;
+                    cArg[1]  = View.class;
+                    cArg[2]  = List.class;
+                    cArg[3]  = FilterableListItemOnClickListener.class;
+                }
+                constructor = filterableViewHolderClass.getDeclaredConstructor(cArg);
+            }
+            catch(Exception e) {}
+
+            this.constructor    = constructor;
+            this.parentInstance = ((parentClass == null) || (parentInstance == null)) ? null : parentInstance;
+        }
+
+        @Override
+        public FilterableViewHolder create(View view, List<FilterableListItem> filteredList, FilterableListItemOnClickListener listener) {
+            try {
+                return (parentInstance == null)
+                    ? (FilterableViewHolder) constructor.newInstance(view, filteredList, listener)
+                    : (FilterableViewHolder) constructor.newInstance(parentInstance, view, filteredList, listener);
+            }
+            catch(Exception e) {
+                return null;
+            }
+        }
+    }
+
+    // A result built by the Filter's worker thread, handed off to the UI thread by "publishResults"
+    private static class FilteredItems {
+        final IndexView items;
+        final int version;               // "dataVersion" when filtering started
+        final int generation;            // sequence number of this result
+        final int baseGeneration;        // the result that "diff" was computed from
+        final DiffUtil.DiffResult diff;  // or null
+
+        FilteredItems(IndexView items, int version, int generation, int baseGeneration, DiffUtil.DiffResult diff) {
+            this.items          = items;
+            this.version        = version;
+            this.generation     = generation;
+            this.baseGeneration = baseGeneration;
+            this.diff           = diff;
+        }
+    }
+
+    // Items are the same when they are the same object, or have the same stable id
+    private static class ItemDiff extends DiffUtil.Callback {
+        final private FilterableListItem[] oldItems;
+        final private FilterableListItem[] newItems;
+        final private boolean contentsChanged;
+
+        ItemDiff(FilterableListItem[] oldItems, FilterableListItem[] newItems, boolean contentsChanged) {
+            this.oldItems        = oldItems;
+            this.newItems        = newItems;
+            this.contentsChanged = contentsChanged;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldItems.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newItems.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            FilterableListItem oldItem = oldItems[oldPosition];
+            FilterableListItem newItem = newItems[newPosition];
+            if (oldItem == newItem) return true;
+
+            long id = getStableId(oldItem);
+            return (id != RecyclerView.NO_ID) && (id == getStableId(newItem));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return !contentsChanged;
+        }
+    }
+
+    // Results of the most recent queries, each one narrower than the one below it.
+    // When a query extends the previous one (ex: one more character typed), only the previous results are scanned.
+    // When a query is removed (ex: backspace), the earlier results are reused without scanning.
+    // Only accessed by the Filter's worker thread.
+    private static class NarrowingStack {
+        private static final int MAX_DEPTH = 16;
+
+        final private ArrayList<String> queries = new ArrayList<String>();
+        final private ArrayList<IndexView> results = new ArrayList<IndexView>();
+        private int version;
+
+        // return the results of the narrowest cached query that "query" refines, or null to scan all items.
+        // cached queries that "query" doesn't refine are removed.
+        IndexView find(String query, int dataVersion) {
+            if (version != dataVersion) {
+                queries.clear();
+                results.clear();
+                version = dataVersion;
+            }
+
+            for (int top = queries.size() - 1; top >= 0; top--) {
+                if (query.contains(queries.get(top))) {
+                    return results.get(top);
+                }
+                queries.remove(top);
+                results.remove(top);
+            }
+            return null;
+        }
+
+        String topQuery() {
+            return queries.isEmpty() ? null : queries.get(queries.size() - 1);
+        }
+
+        void push(String query, IndexView matches) {
+            if (queries.size() == MAX_DEPTH) {
+                queries.remove(0);
+                results.remove(0);
+            }
+            queries.add(query);
+            results.add(matches);
+        }
+    }
+
     private Filter createSearchFilter() {
+        final NarrowingStack narrowingStack = new NarrowingStack();
+
         return new Filter() {
+            // the previous result, as it was published (only kept when it is small enough to diff)
+            private FilterableListItem[] previousItems;
+            private int previousVersion;
+            private int generation;
 
             @Override
             protected FilterResults performFiltering(CharSequence charSequence) {
+                final int request = getRequestCount();
+                final int version = dataVersion;
+                final Items items = FilterableAdapter.this.items;
+                IndexView results;
+
+                // a pass that is superseded by a newer request returns null, and nothing is published
                 String charString = charSequence.toString();
                 if (charString.isEmpty()) {
-                    resetFilteredList();
+                    results = IndexView.all(FilterableAdapter.this.order, items.size());
+                } else if (fuzzy) {
+                    results = getFuzzyMatches(items, SearchKeys.fold(charString), request);
+                    if (results == null) return null;
                 } else {
-                    filteredList.clear();
-                    for (FilterableListItem item : unfilteredList) {
-                        String filterableValue = item.getFilterableValue();
+                    final String query = SearchKeys.fold(charString);
+
+                    IndexView candidates = narrowingStack.find(query, version);
+
+                    if ((candidates != null) && query.equals(narrowingStack.topQuery())) {
+                        results = candidates;
+                    }
+                    else {
+                        IndexView.Builder matches = new IndexView.Builder();
+
+                        if (candidates != null) {
+                            for (int i = 0; i < candidates.size(); i++) {
+                                if (((i & CANCEL_CHECK_MASK) == 0) && isCancelled(request)) return null;
+
+                                int position = candidates.get(i);
+
+                                if (SearchKeys.get(items.get(position)).contains(query)) {
+                                    matches.add(position);
+                                }
+                            }
+                        }
+                        else {
+                            final Order order        = FilterableAdapter.this.order;
+                            final TrigramIndex index = searchIndex;
+                            final int[] positions    = (index != null) ? index.find(query) : null;
+
+                            if (positions != null) {
+                                addIndexedMatches(items, order, index, positions, query, matches);
+                            }
+                            else {
+                                Order.Cursor cursor = (order != null) ? order.cursor() : null;
+                                for (int i = 0; i < items.size(); i++) {
+                                    if (((i & CANCEL_CHECK_MASK) == 0) && isCancelled(request)) return null;
+
+                                    int position = (cursor != null) ? cursor.next() : i;
 
-                        if (filterableValue.toLowerCase().contains(charString.toLowerCase())) {
-                            filteredList.add(item);
+                                    if (SearchKeys.get(items.get(position)).contains(query)) {
+                                        matches.add(position);
+                                    }
+                                }
+                            }
                         }
+                        results = matches.build();
+                        narrowingStack.push(query, results);
                     }
                 }
 
+                // compare to the previous result, in the background.
+                // when the data changed, items that are in both results may still need to be rebound (ex: a new distance).
+                if (isCancelled(request)) return null;
+
+                FilterableListItem[] resultItems = null;
+                DiffUtil.DiffResult diff         = null;
+                if (results.size() <= MAX_DIFF_SIZE) {
+                    resultItems = new FilterableListItem[results.size()];
+                    for (int i = 0; i < resultItems.length; i++) {
+                        resultItems[i] = items.get(results.get(i));
+                    }
+                    if (previousItems != null) {
+                        diff = DiffUtil.calculateDiff(new ItemDiff(previousItems, resultItems, version != previousVersion), true);
+                    }
+                }
+
+                int baseGeneration = generation++;
+                FilteredItems filteredItems = new FilteredItems(results, version, generation, baseGeneration, diff);
+
+                previousItems   = resultItems;
+                previousVersion = version;
+
                 FilterResults filterResults = new FilterResults();
-                filterResults.values = filteredList;
+                filterResults.values = filteredItems;
+                filterResults.count  = results.size();
                 return filterResults;
             }
 
+            // swap in the new result
+            // the diff only applies when the displayed list is still the one it was computed from.
             @Override
             protected void publishResults(CharSequence charSequence, FilterResults filterResults) {
-                notifyDataSetChanged();
+                if ((filterResults == null) || !(filterResults.values instanceof FilteredItems)) return;
+
+                FilteredItems results = (FilteredItems) filterResults.values;
+                boolean is_diffable   = (results.diff != null) && (displayedGeneration == results.baseGeneration);
+
+                filteredView        = results.items;
+                displayedGeneration = results.generation;
+
+                if (is_diffable) {
+                    results.diff.dispatchUpdatesTo(FilterableAdapter.this);
+                }
+                else {
+                    notifyDataSetChanged();
+                }
+
+                // items were appended while the result was being built.
+                // "dataVersion" was already incremented by the change, so the query is only issued again at the current version,
+                // which keeps the results cached at that version (and the diff against the displayed rows).
+                if (results.version != dataVersion) {
+                    searchFilter.requery();
+                }
             }
         };
     }
 
-    // To be called when "unfilteredList" is updated outside of this adapter. (note: this Object is stored by reference.)
+    // To be called on the UI thread to replace all of the items.
+    // The adapter doesn't keep a reference to the caller's list, so this costs O(n) to copy it (to append items, "addAll" doesn't copy the earlier ones).
     // Under normal conditions, "notifyDataXXX" methods would be called on an adapter.
     // However, these methods are "final".. so I couldn't extend them.
-    // This "refresh" method results in:
-    //   * data being copied (and optionally filtered) into "filteredList" from "unfilteredList"
-    //   * "notifyDataSetChanged" being called on the adapter after "filteredList" has been updated
-    public void refresh() {
-        searchFilter.filter(searchFilter.constraint);
+    // This "setItems" method results in:
+    //   * a new snapshot of the items, for the Filter's worker thread
+    //   * the positions of the (optionally filtered) items being collected in the background
+    //   * the adapter being notified after they are displayed
+    public void setItems(List<? extends FilterableListItem> unfilteredList) {
+        items = Items.copyOf(unfilteredList);
+        requery();
+    }
+
+    // the items or their order changed, which invalidates the cached results of earlier queries
+    private void requery() {
+        dataVersion++;
+        searchFilter.requery();
+    }
+
+    // To be called on the UI thread to change the order of the items, without changing the items.
+    // "order" is a permutation of positions in the unfiltered items (ex: produced by sorting an array of primitive keys), or null for the natural order.
+    // The array is stored by reference, and should not be modified afterward.
+    // This "setOrder" method results in the same behavior as "setItems", without a new snapshot.
+    public void setOrder(int[] order) {
+        this.order = (order != null) ? Order.full(order) : null;
+        requery();
+    }
+
+    // To be called on the UI thread to display some of the items first, without ordering the others.
+    // "prefix" lists distinct positions in the unfiltered items, which are displayed in that order,
+    // and all of the other items follow in their natural order (ex: only the nearest places are sorted).
+    // It costs O(k log k) for k positions, instead of a permutation of all items.
+    // The array is stored by reference, and should not be modified afterward.
+    public void setOrderPrefix(int[] prefix) {
+        this.order = Order.partial(prefix);
+        requery();
+    }
+
+    // The position in the ordered list of all items (see: "setOrder", "setOrderPrefix") of the item at a position in the filtered list,
+    // or -1 if the position is out of range. (ex: to find how much of the order is visible)
+    public int getOrderedPosition(int position) {
+        if ((position < 0) || (position >= filteredView.size())) return -1;
+        if (filteredView.isUnfiltered()) return position;
+
+        int p       = filteredView.get(position);
+        Order order = this.order;
+        return (order != null) ? order.rank(p) : p;
+    }
+
+    // A read-only snapshot of the unfiltered items, which later changes don't affect.
+    // It is safe to read on any thread (ex: to build a "TrigramIndex" in the background), and it isn't copied.
+    public List<FilterableListItem> getUnfilteredItems() {
+        return items;
+    }
+
+    // Optional: an index of the unfiltered items, used to answer queries of 3 or more characters without a scan.
+    // It should be built in the background after all items have been added (ex: "TrigramIndex.build"), and replaced (or cleared) if items change.
+    // Items appended after it was built are still found, by a scan.
+    public void setSearchIndex(TrigramIndex index) {
+        this.searchIndex = index;
+    }
+
+    // To be called on the UI thread when the items are populated incrementally (ex: while data is loading in the background).
+    // This "addAll" method results in:
+    //   * items being appended to a new snapshot (the earlier items aren't copied)
+    //   * when no filter is active, the displayed range being extended and only the inserted range being notified
+    //   * otherwise, the same behavior as "setItems"
+    public void addAll(List<? extends FilterableListItem> added) {
+        if ((added == null) || added.isEmpty()) return;
+
+        items = items.append(added);
+        dataVersion++;
+
+        if (filteredView.isUnfiltered() && ((searchFilter.constraint == null) || (searchFilter.constraint.length() == 0))) {
+            int start = filteredView.size();
+            filteredView        = filteredView.resize(items.size());
+            displayedGeneration = NO_GENERATION;
+            notifyItemRangeInserted(start, added.size());
+        }
+        else {
+            requery();
+        }
     }
 }
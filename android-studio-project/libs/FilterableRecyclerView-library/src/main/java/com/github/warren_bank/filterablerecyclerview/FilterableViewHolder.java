@@ -6,11 +6,20 @@ import androidx.recyclerview.widget.RecyclerView;
 import java.util.List;
 
 abstract public class FilterableViewHolder extends RecyclerView.ViewHolder {
+
+    // creates the view holder for an inflated row, without reflection (ex: an anonymous class that calls a constructor)
+    public interface Factory {
+        FilterableViewHolder create(View view, List<FilterableListItem> filteredList, FilterableListItemOnClickListener listener);
+    }
+
     final protected View view;
     final protected List filteredList;
 
     final private FilterableListItemOnClickListener listener;
 
+    // the item that is displayed, set on the UI thread when the holder is bound
+    private FilterableListItem boundItem;
+
     public FilterableViewHolder(
         View view,
         List<FilterableListItem> filteredList,
@@ -24,8 +33,14 @@ abstract public class FilterableViewHolder extends RecyclerView.ViewHolder {
         view.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                int position = getAdapterPosition();
-                FilterableListItem item = filteredList.get(position);
+                FilterableListItem item = boundItem;
+
+                if (item == null) {
+                    int position = getAdapterPosition();
+                    if ((position < 0) || (position >= filteredList.size())) return;
+
+                    item = (FilterableListItem) filteredList.get(position);
+                }
                 listener.onFilterableListItemClick(item);
             }
         });
@@ -33,6 +48,11 @@ abstract public class FilterableViewHolder extends RecyclerView.ViewHolder {
         onCreate(view);
     }
 
+    void bind(FilterableListItem item) {
+        boundItem = item;
+        onUpdate(item);
+    }
+
     // hook to allow subclass to store private references to UI elements
     abstract public void onCreate(View view);
 
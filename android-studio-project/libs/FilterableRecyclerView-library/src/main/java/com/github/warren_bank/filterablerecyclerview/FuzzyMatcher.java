@@ -0,0 +1,141 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+// Approximate substring matching (ex: "starbuks" matches "starbucks coffee").
+//
+// The score of a search key is the smallest number of edits (insertions, deletions or substitutions of one character)
+// that turn the query into a substring of the key: the Levenshtein distance to the closest substring.
+// It is computed by the bitap algorithm (Wu-Manber), with one 64-bit word per allowed error.
+//
+// Keys can be rejected before the bitap pass by:
+//   * length:    a key can't match if it is shorter than (query length - allowed errors)
+//   * signature: each edit can remove at most one of the distinct characters of the query,
+//                so a key can't match if it is missing more than (allowed errors) of them
+//
+// A matcher is created for one query, and reuses its state for every key: it is not thread-safe.
+public class FuzzyMatcher {
+    public static final int MAX_QUERY_LENGTH = 63;  // one bit per character of the query, plus one spare bit
+
+    final private String query;
+    final private int maxErrors;
+    final private long[] asciiMasks = new long[128];
+    final private char[] otherChars;
+    final private long[] otherMasks;
+    final private long signature;
+    final private int minKeyLength;
+    final private long[] state;  // bitap: one word per number of errors
+
+    // "query" must already be folded (see: "SearchKeys.fold")
+    public FuzzyMatcher(String query) {
+        if (query.length() > MAX_QUERY_LENGTH) {
+            query = query.substring(0, MAX_QUERY_LENGTH);
+        }
+
+        this.query        = query;
+        this.maxErrors    = getMaxErrors(query.length());
+        this.signature    = getSignature(query);
+        this.minKeyLength = query.length() - maxErrors;
+        this.state        = new long[maxErrors + 1];
+
+        // bit i of the mask for char c is set when query[i] == c
+        StringBuilder others = new StringBuilder();
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if ((c >= 128) && (others.indexOf(String.valueOf(c)) < 0)) others.append(c);
+        }
+        otherChars = others.toString().toCharArray();
+        otherMasks = new long[otherChars.length];
+
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c < 128) {
+                asciiMasks[c] |= (1L << i);
+            }
+            else {
+                for (int j = 0; j < otherChars.length; j++) {
+                    if (otherChars[j] == c) otherMasks[j] |= (1L << i);
+                }
+            }
+        }
+    }
+
+    // the number of typos that are tolerated grows with the length of the query
+    public static int getMaxErrors(int queryLength) {
+        if (queryLength <= 3) return 0;
+        if (queryLength <= 5) return 1;
+        if (queryLength <= 9) return 2;
+        return 3;
+    }
+
+    // one bit for each character that occurs in the key (several characters can share a bit)
+    public static long getSignature(String key) {
+        long signature = 0;
+        for (int i = 0; i < key.length(); i++) {
+            signature |= (1L << (key.charAt(i) & 63));
+        }
+        return signature;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    // prefilter, by the signature of a key
+    public boolean mayMatch(long keySignature, int keyLength) {
+        if (keyLength < minKeyLength) return false;
+
+        return Long.bitCount(signature & ~keySignature) <= maxErrors;
+    }
+
+    // return the number of errors in the best match, or -1 when there are more than "getMaxErrors()"
+    public int match(String key) {
+        int m = query.length();
+        if (m == 0) return 0;
+        if (key.length() < minKeyLength) return -1;
+
+        int k       = maxErrors;
+        long found  = 1L << (m - 1);
+        long[] R    = state;
+        int best    = -1;
+
+        // before any character of the key: the first d characters of the query can be deleted with d errors
+        for (int d = 0; d <= k; d++) {
+            R[d] = (1L << d) - 1;
+        }
+
+        for (int i = 0; i < key.length(); i++) {
+            long mask = getMask(key.charAt(i));
+
+            long previous = R[0];
+            R[0] = ((R[0] << 1) | 1) & mask;
+
+            for (int d = 1; d <= k; d++) {
+                long current = R[d];
+
+                R[d] = (((current << 1) | 1) & mask)  // match
+                     | (previous << 1) | 1            // substitution
+                     | previous                       // insertion (an extra character in the key)
+                     | (R[d - 1] << 1);               // deletion (a character of the query is missing from the key)
+
+                previous = current;
+            }
+
+            for (int d = 0; d <= k; d++) {
+                if ((R[d] & found) != 0) {
+                    if ((best < 0) || (d < best)) best = d;
+                    break;
+                }
+            }
+            if (best == 0) return 0;
+        }
+        return best;
+    }
+
+    private long getMask(char c) {
+        if (c < 128) return asciiMasks[c];
+
+        for (int j = 0; j < otherChars.length; j++) {
+            if (otherChars[j] == c) return otherMasks[j];
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+// optional: a list item with a stable id, which is unique among the items in the list and never changes.
+// the adapter uses it for "getItemId" (see: "RecyclerView.Adapter.setHasStableIds"), and to match items when results change.
+public interface IdentifiableListItem extends FilterableListItem {
+    long getItemId();
+}
@@ -0,0 +1,67 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+import java.util.Arrays;
+
+// An immutable list of positions in the unfiltered items of a "FilterableAdapter".
+// Items are resolved by position when they are displayed, so a result never copies item references.
+//
+// Notes:
+//   * an unfiltered view is backed by the order of the items (see: "Order"), and costs O(1) to create
+//   * a filtered view is backed by an array of the positions that matched
+final class IndexView {
+    final private Order order;      // unfiltered: or null for the natural order
+    final private int[] positions;  // filtered: or null when unfiltered
+    final private int size;
+
+    private IndexView(Order order, int[] positions, int size) {
+        this.order     = order;
+        this.positions = positions;
+        this.size      = size;
+    }
+
+    // all items in [0, size), in "order"
+    static IndexView all(Order order, int size) {
+        return new IndexView(order, null, size);
+    }
+
+    boolean isUnfiltered() {
+        return (positions == null);
+    }
+
+    int size() {
+        return size;
+    }
+
+    // the position in the unfiltered items of the i-th item
+    int get(int i) {
+        if ((i < 0) || (i >= size)) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+
+        if (positions != null) return positions[i];
+
+        return (order == null) ? i : order.get(i);
+    }
+
+    // the same unfiltered view, after items were appended
+    IndexView resize(int size) {
+        return new IndexView(order, null, size);
+    }
+
+    // accumulates the positions of a filtered view
+    static class Builder {
+        private int[] positions = new int[16];
+        private int size;
+
+        void add(int position) {
+            if (size == positions.length) positions = Arrays.copyOf(positions, size * 2);
+            positions[size++] = position;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > positions.length) positions = Arrays.copyOf(positions, capacity);
+        }
+
+        IndexView build() {
+            return new IndexView(null, positions, size);
+        }
+    }
+}
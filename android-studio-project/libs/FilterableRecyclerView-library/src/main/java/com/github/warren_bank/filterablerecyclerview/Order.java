@@ -0,0 +1,107 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+import java.util.Arrays;
+
+// The order in which the unfiltered items of a "FilterableAdapter" are displayed (see: "FilterableAdapter.setOrder").
+// Its arrays are never changed, so it can be read by the UI thread and the Filter's worker thread.
+//
+// Notes:
+//   * a full order is a permutation of the positions [0, length), and any positions beyond its length follow in their natural order
+//   * a partial order lists the positions that are displayed first, and all of the others follow in their natural order.
+//     it costs O(k log k) to create for k positions, and O(log k) to resolve a position beyond them (or O(1) each, with a "Cursor")
+final class Order {
+    final private int[] order;
+    final private int[] sorted;       // partial: the positions in "order", ascending. null when full.
+    final private int[] sortedRanks;  // partial: the index in "order" of each position in "sorted"
+
+    private volatile int[] ranks;     // full: inverse of "order", on first use
+
+    private Order(int[] order, int[] sorted, int[] sortedRanks) {
+        this.order       = order;
+        this.sorted      = sorted;
+        this.sortedRanks = sortedRanks;
+    }
+
+    static Order full(int[] order) {
+        return new Order(order, null, null);
+    }
+
+    static Order partial(int[] prefix) {
+        long[] packed = new long[prefix.length];
+        for (int i = 0; i < prefix.length; i++) {
+            packed[i] = (((long) prefix[i]) << 32) | i;
+        }
+        Arrays.sort(packed);
+
+        int[] sorted      = new int[prefix.length];
+        int[] sortedRanks = new int[prefix.length];
+        for (int m = 0; m < packed.length; m++) {
+            sorted[m]      = (int) (packed[m] >>> 32);
+            sortedRanks[m] = (int) packed[m];
+        }
+        return new Order(prefix, sorted, sortedRanks);
+    }
+
+    // the position of the i-th item
+    int get(int i) {
+        if (i < order.length) return order[i];
+        if (sorted == null) return i;
+
+        // the j-th position that isn't in "order".
+        // below sorted[m], (sorted[m] - m) positions aren't in "order", so count the positions in "sorted" that precede it.
+        int j  = i - order.length;
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if ((sorted[mid] - mid) <= j) lo = mid + 1;
+            else                          hi = mid;
+        }
+        return j + lo;
+    }
+
+    // inverse of "get"
+    int rank(int position) {
+        if (sorted == null) {
+            int[] ranks = this.ranks;
+            if (ranks == null) {
+                ranks = new int[order.length];
+                for (int i = 0; i < order.length; i++) {
+                    ranks[order[i]] = i;
+                }
+                this.ranks = ranks;
+            }
+            return (position < ranks.length) ? ranks[position] : position;
+        }
+
+        int m = Arrays.binarySearch(sorted, position);
+        if (m >= 0) return sortedRanks[m];
+
+        int preceding = -(m + 1);  // number of positions in "order" that are smaller
+        return order.length + (position - preceding);
+    }
+
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    // the positions of the items in the order they are displayed, one at a time.
+    // only used by a single thread.
+    final class Cursor {
+        private int i;  // index of the next item
+        private int m;  // partial: index in "sorted" of the next position to skip
+        private int p;  // partial: the next position in natural order
+
+        int next() {
+            if (i < order.length) return order[i++];
+            if (sorted == null) return i++;
+
+            i++;
+            while ((m < sorted.length) && (sorted[m] == p)) {
+                m++;
+                p++;
+            }
+            return p++;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+import android.os.Handler;
+import android.os.Looper;
+
+// Debounces the queries of a "Filter" while the user types (ex: from "SearchView.OnQueryTextListener.onQueryTextChange").
+//
+// Notes:
+//   * keystrokes within "delayMillis" of each other are coalesced: only the last query is filtered
+//   * a filter pass in progress is cancelled as soon as a newer query arrives, rather than when the newer query is due
+//   * all methods must be called on the UI thread
+public class QueryScheduler {
+    public static final long DEFAULT_DELAY_MILLIS = 250;
+
+    final private Filter filter;
+    final private Handler handler;
+    final private Runnable pendingQuery;
+
+    private long delayMillis;
+    private CharSequence pendingConstraint;
+
+    public QueryScheduler(Filter filter) {
+        this(filter, DEFAULT_DELAY_MILLIS);
+    }
+
+    public QueryScheduler(Filter filter, long delayMillis) {
+        this.filter       = filter;
+        this.handler      = new Handler(Looper.getMainLooper());
+        this.delayMillis  = delayMillis;
+        this.pendingQuery = new Runnable() {
+            @Override
+            public void run() {
+                CharSequence constraint = pendingConstraint;
+                pendingConstraint = null;
+
+                if (constraint != null) {
+                    QueryScheduler.this.filter.query(constraint);
+                }
+            }
+        };
+    }
+
+    public void setDelay(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    // filter "constraint" when no newer query arrives within the delay
+    public void schedule(CharSequence constraint) {
+        if (constraint == null) constraint = "";
+
+        handler.removeCallbacks(pendingQuery);
+        filter.cancel();
+
+        pendingConstraint = constraint;
+        handler.postDelayed(pendingQuery, delayMillis);
+    }
+
+    // filter "constraint" now (ex: from "onQueryTextSubmit")
+    public void submit(CharSequence constraint) {
+        if (constraint == null) constraint = "";
+
+        handler.removeCallbacks(pendingQuery);
+        pendingConstraint = null;
+
+        filter.query(constraint);
+    }
+
+    // drop a query that isn't due yet (ex: when the activity is destroyed)
+    public void cancel() {
+        handler.removeCallbacks(pendingQuery);
+        pendingConstraint = null;
+    }
+}
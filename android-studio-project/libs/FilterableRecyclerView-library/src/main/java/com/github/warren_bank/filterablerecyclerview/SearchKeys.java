@@ -0,0 +1,56 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+import java.text.Normalizer;
+
+public class SearchKeys {
+
+    // Fold a value for case-insensitive and accent-insensitive matching:
+    //   * Unicode normalization (NFD), which separates accents from the letters they are combined with
+    //   * accents (non-spacing marks) are removed
+    //   * letters are lowercased, independently of the default Locale
+    // For example: "CAFE", and "Cafe" spelled with an accented "e", are both folded to "cafe".
+    public static String fold(CharSequence value) {
+        if (value == null) return "";
+
+        String string = value.toString();
+        if (isFolded(string)) return string;
+
+        String normalized = isAscii(string) ? string : Normalizer.normalize(string, Normalizer.Form.NFD);
+        StringBuilder sb  = new StringBuilder(normalized.length());
+
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+
+            if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+
+            sb.append(Character.toLowerCase(c));
+        }
+        return sb.toString();
+    }
+
+    // the folded search key of an item.
+    // items that implement "SearchableListItem" supply a precomputed key, so matching them doesn't allocate.
+    // other items are folded each time.
+    public static String get(FilterableListItem item) {
+        return (item instanceof SearchableListItem)
+            ? ((SearchableListItem) item).getSearchKey()
+            : fold(item.getFilterableValue());
+    }
+
+    // lowercase ASCII
+    private static boolean isFolded(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+
+            if ((c >= 0x80) || ((c >= 'A') && (c <= 'Z'))) return false;
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,7 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+// optional: a list item that supplies its own precomputed search key.
+// the key should be computed once (ex: when the item is created), by "SearchKeys.fold(getFilterableValue())".
+public interface SearchableListItem extends FilterableListItem {
+    String getSearchKey();
+}
@@ -0,0 +1,305 @@
+package com.github.warren_bank.filterablerecyclerview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+// Inverted index of the trigrams (3 consecutive characters) in the search keys of a list of items.
+// A substring query of 3 or more characters can only match keys that contain every trigram of the query,
+// so only the keys in the intersection of those posting lists need to be checked.
+//
+// It also supports fuzzy matching (see: "FuzzyMatcher") over the same unique keys.
+//
+// Notes:
+//   * items that share the same key (ex: the points of a track) are indexed once, by key
+//   * trigrams are hashed to an int; a collision can only add candidates, which are then checked with "contains"
+//   * the index is immutable, and should be built in the background (ex: by an AsyncTask) after all items have been added
+//   * it covers positions [0, size) of the list it was built from; items appended later are not indexed
+public class TrigramIndex {
+    private static final int MAX_SELECTIVITY = 8;  // the index is only used when a posting list contains at most 1/8 of the keys
+
+    final private int size;
+    final private String[] keys;           // unique search keys
+    final private long[] signatures;       // key -> signature for fuzzy matching
+    final private int[] keyPositions;      // list positions, grouped by key
+    final private int[] keyOffsets;        // key -> range in "keyPositions"
+    final private TrigramTable trigrams;   // trigram hash -> slot
+    final private int[] postingOffsets;    // slot -> range in "postings"
+    final private int[] postings;          // sorted keys, grouped by slot
+
+    private TrigramIndex(int size, String[] keys, int[] keyPositions, int[] keyOffsets, TrigramTable trigrams, int[] postingOffsets, int[] postings) {
+        this.size           = size;
+        this.keys           = keys;
+        this.signatures     = new long[keys.length];
+        this.keyPositions   = keyPositions;
+        this.keyOffsets     = keyOffsets;
+        this.trigrams       = trigrams;
+        this.postingOffsets = postingOffsets;
+        this.postings       = postings;
+
+        for (int k = 0; k < keys.length; k++) {
+            signatures[k] = FuzzyMatcher.getSignature(keys[k]);
+        }
+    }
+
+    public static TrigramIndex build(List<? extends FilterableListItem> items) {
+        int size = items.size();
+
+        // unique keys
+        HashMap<String, Integer> keyIds = new HashMap<String, Integer>();
+        ArrayList<String> uniqueKeys    = new ArrayList<String>();
+        int[] keyOf                     = new int[size];
+        int trigramCount                = 0;
+
+        for (int i = 0; i < size; i++) {
+            String key = SearchKeys.get(items.get(i));
+            Integer id = keyIds.get(key);
+
+            if (id == null) {
+                id = uniqueKeys.size();
+                keyIds.put(key, id);
+                uniqueKeys.add(key);
+                trigramCount += Math.max(0, key.length() - 2);
+            }
+            keyOf[i] = id;
+        }
+        keyIds = null;
+
+        String[] keys = uniqueKeys.toArray(new String[uniqueKeys.size()]);
+
+        // key -> positions (counting sort, so positions are ascending within each key)
+        int[] keyOffsets = new int[keys.length + 1];
+        for (int i = 0; i < size; i++) {
+            keyOffsets[keyOf[i] + 1]++;
+        }
+        for (int k = 0; k < keys.length; k++) {
+            keyOffsets[k + 1] += keyOffsets[k];
+        }
+        int[] keyPositions = new int[size];
+        int[] next         = Arrays.copyOf(keyOffsets, keys.length);
+        for (int i = 0; i < size; i++) {
+            keyPositions[next[keyOf[i]]++] = i;
+        }
+
+        // posting lists, by counting sort: keys are visited in ascending order, so each list is sorted.
+        // a key that contains the same trigram more than once is only added once.
+        TrigramTable table = new TrigramTable(trigramCount);
+        int[] counts       = new int[16];
+        int[] lastKey      = new int[16];
+
+        for (int k = 0; k < keys.length; k++) {
+            String key = keys[k];
+            for (int i = 0; i + 2 < key.length(); i++) {
+                int slot = table.add(hash(key, i));
+
+                if (slot == counts.length) {
+                    counts  = Arrays.copyOf(counts,  slot * 2);
+                    lastKey = Arrays.copyOf(lastKey, slot * 2);
+                }
+                if ((counts[slot] == 0) || (lastKey[slot] != k)) {
+                    counts[slot]++;
+                    lastKey[slot] = k;
+                }
+            }
+        }
+
+        int slots            = table.size();
+        int[] postingOffsets = new int[slots + 1];
+        for (int t = 0; t < slots; t++) {
+            postingOffsets[t + 1] = postingOffsets[t] + counts[t];
+        }
+
+        int[] postings = new int[postingOffsets[slots]];
+        int[] fill     = Arrays.copyOf(postingOffsets, slots);
+        for (int k = 0; k < keys.length; k++) {
+            String key = keys[k];
+            for (int i = 0; i + 2 < key.length(); i++) {
+                int slot = table.find(hash(key, i));
+                int last = fill[slot] - 1;
+
+                if ((last < postingOffsets[slot]) || (postings[last] != k)) {
+                    postings[fill[slot]++] = k;
+                }
+            }
+        }
+
+        return new TrigramIndex(size, keys, keyPositions, keyOffsets, table, postingOffsets, postings);
+    }
+
+    // number of list positions that are indexed: [0, size)
+    public int size() {
+        return size;
+    }
+
+    // "query" must already be folded (see: "SearchKeys.fold").
+    // returns the ascending list positions of all indexed items whose key contains "query",
+    // or null when the index can't answer the query faster than a scan:
+    //   * the query is shorter than 3 characters
+    //   * every trigram in the query is too common (ex: "lak" in a list of lakes)
+    public int[] find(String query) {
+        if ((query == null) || (query.length() < 3)) return null;
+
+        // the posting list of each trigram in the query, shortest first
+        int count = query.length() - 2;
+        long[] lists = new long[count];  // (length << 32) | trigram slot
+        for (int i = 0; i < count; i++) {
+            int slot = trigrams.find(hash(query, i));
+            if (slot < 0) return new int[0];
+
+            int length = postingOffsets[slot + 1] - postingOffsets[slot];
+            lists[i] = (((long) length) << 32) | slot;
+        }
+        Arrays.sort(lists);
+
+        if ((lists[0] >>> 32) > (keys.length / MAX_SELECTIVITY)) return null;
+
+        // intersect: each candidate from the shortest list must be in all of the others
+        int first   = (int) lists[0];
+        int[] match = Arrays.copyOfRange(postings, postingOffsets[first], postingOffsets[first + 1]);
+        int matches = match.length;
+
+        for (int l = 1; (l < count) && (matches > 0); l++) {
+            int slot = (int) lists[l];
+            if (slot == first) continue;
+
+            int from = postingOffsets[slot];
+            int to   = postingOffsets[slot + 1];
+            int kept = 0;
+            for (int i = 0; i < matches; i++) {
+                if (Arrays.binarySearch(postings, from, to, match[i]) >= 0) {
+                    match[kept++] = match[i];
+                }
+            }
+            matches = kept;
+        }
+
+        // verify (trigrams may not be adjacent in the key, and hashes may collide), then expand keys to positions
+        int total = 0;
+        for (int i = 0; i < matches; i++) {
+            int k = match[i];
+            if (keys[k].contains(query)) {
+                match[total++] = k;
+            }
+        }
+
+        int positionCount = 0;
+        for (int i = 0; i < total; i++) {
+            positionCount += keyOffsets[match[i] + 1] - keyOffsets[match[i]];
+        }
+
+        int[] positions = new int[positionCount];
+        int p = 0;
+        for (int i = 0; i < total; i++) {
+            int k = match[i];
+            int length = keyOffsets[k + 1] - keyOffsets[k];
+            System.arraycopy(keyPositions, keyOffsets[k], positions, p, length);
+            p += length;
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    // returns all indexed items whose key is a fuzzy match, as: ((long) errors << 32) | position
+    // each unique key is scored once, and most keys are rejected by their signature without being scored.
+    public long[] findFuzzy(FuzzyMatcher matcher) {
+        int[] errors = new int[keys.length];
+        int total    = 0;
+
+        for (int k = 0; k < keys.length; k++) {
+            errors[k] = matcher.mayMatch(signatures[k], keys[k].length())
+                ? matcher.match(keys[k])
+                : -1;
+
+            if (errors[k] >= 0) {
+                total += keyOffsets[k + 1] - keyOffsets[k];
+            }
+        }
+
+        long[] hits = new long[total];
+        int count   = 0;
+        for (int k = 0; k < keys.length; k++) {
+            if (errors[k] < 0) continue;
+
+            for (int i = keyOffsets[k]; i < keyOffsets[k + 1]; i++) {
+                hits[count++] = (((long) errors[k]) << 32) | keyPositions[i];
+            }
+        }
+        return hits;
+    }
+
+    private static int hash(String s, int i) {
+        long h = (((long) s.charAt(i)) << 32) | (((long) s.charAt(i + 1)) << 16) | s.charAt(i + 2);
+
+        // finalizer of MurmurHash3
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+
+    // open addressing hash table: trigram hash -> slot, where slots are numbered in the order trigrams are added
+    private static class TrigramTable {
+        private int[] hashes;
+        private int[] slots;  // slot + 1, or 0 when empty
+        private int size;
+
+        TrigramTable(int expected) {
+            int capacity = 16;
+            while (capacity < (expected / 4)) capacity <<= 1;  // most trigrams are shared by many keys
+
+            hashes = new int[capacity];
+            slots  = new int[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        // return the slot of the trigram, or -1
+        int find(int hash) {
+            int mask = slots.length - 1;
+            for (int i = mix(hash) & mask; slots[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == hash) return slots[i] - 1;
+            }
+            return -1;
+        }
+
+        // return the slot of the trigram, adding it if needed
+        int add(int hash) {
+            int mask = slots.length - 1;
+            int i    = mix(hash) & mask;
+            for (; slots[i] != 0; i = (i + 1) & mask) {
+                if (hashes[i] == hash) return slots[i] - 1;
+            }
+
+            hashes[i] = hash;
+            slots[i]  = ++size;
+
+            if ((size * 2) > slots.length) grow();
+            return size - 1;
+        }
+
+        private void grow() {
+            int[] oldHashes = hashes;
+            int[] oldSlots  = slots;
+            int mask        = (oldSlots.length * 2) - 1;
+
+            hashes = new int[oldSlots.length * 2];
+            slots  = new int[oldSlots.length * 2];
+
+            for (int j = 0; j < oldSlots.length; j++) {
+                if (oldSlots[j] == 0) continue;
+
+                int i = mix(oldHashes[j]) & mask;
+                while (slots[i] != 0) i = (i + 1) & mask;
+                hashes[i] = oldHashes[j];
+                slots[i]  = oldSlots[j];
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}